@@ -0,0 +1,17 @@
+#!/bin/sh
+# Compile the project into out (or the directory given).  Everything but the
+# simd folder compiles with a plain javac.  simd holds SimdKernels, which
+# needs the incubating Vector API, so it's only compiled if the JDK has the
+# jdk.incubator.vector module; without it VectorKernels uses the scalar loops.
+# Run with --add-modules jdk.incubator.vector to use the SIMD kernels.
+set -e
+cd "$(dirname "$0")"
+OUT=${1:-out}
+mkdir -p "$OUT"
+javac -d "$OUT" $(find . -path ./simd -prune -o -name '*.java' -print)
+
+if java --add-modules jdk.incubator.vector -version > /dev/null 2>&1; then
+	javac --add-modules jdk.incubator.vector -cp "$OUT" -d "$OUT" $(find simd -name '*.java')
+else
+	echo "jdk.incubator.vector isn't available, so SimdKernels wasn't compiled"
+fi
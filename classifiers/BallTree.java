@@ -0,0 +1,166 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+
+import ml.data.DenseMatrix;
+
+/**
+ * A ball tree over the rows of a DenseMatrix.  The rows are split the same way
+ * as a KDTree, but each node keeps the center of its rows and the radius of
+ * the ball around the center that holds them all.  No row of a node can be
+ * closer to the query than (distance to the center - radius), which is a much
+ * tighter bound than a single split column when there are lots of columns.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class BallTree extends SpatialIndex {
+	private double[][] centers; // centers[node], the mean of the node's rows
+	private double[] radii; // radii[node], the largest distance of a row from the center
+	
+	/**
+	 * Build the tree
+	 * 
+	 * @param matrix the rows to index
+	 */
+	public BallTree(DenseMatrix matrix){
+		super(matrix);
+		centers = new double[starts.length][];
+		radii = new double[starts.length];
+		
+		if( order.length > 0 ){
+			build(0, order.length);
+		}
+	}
+	
+	/**
+	 * Build the subtree for some rows
+	 * 
+	 * @param start
+	 * @param end
+	 * @return the node
+	 */
+	private int build(int start, int end){
+		int node = addNode(start, end);
+		setBall(node);
+		
+		if( end - start <= LEAF_SIZE ){
+			return node;
+		}
+		
+		int column = widestColumn(start, end);
+		
+		// all of the rows are the same
+		if( column == -1 ){
+			return node;
+		}
+		
+		int middle = partition(start, end, column);
+		int left = build(start, middle);
+		int right = build(middle, end);
+		lefts[node] = left;
+		rights[node] = right;
+		
+		return node;
+	}
+	
+	/**
+	 * Calculate the center and radius of a node's rows
+	 * 
+	 * @param node
+	 */
+	private void setBall(int node){
+		double[] center = new double[numColumns];
+		
+		for( int i = starts[node]; i < ends[node]; i++ ){
+			for( int column = 0; column < numColumns; column++ ){
+				center[column] += matrix.get(order[i], column);
+			}
+		}
+		
+		for( int column = 0; column < numColumns; column++ ){
+			center[column] /= ends[node] - starts[node];
+		}
+		
+		double radius = 0.0;
+		
+		for( int i = starts[node]; i < ends[node]; i++ ){
+			double dist = 0.0;
+			
+			for( int column = 0; column < numColumns; column++ ){
+				double diff = matrix.get(order[i], column) - center[column];
+				dist += diff*diff;
+			}
+			
+			radius = Math.max(radius, dist);
+		}
+		
+		centers[node] = center;
+		radii[node] = Math.sqrt(radius);
+	}
+	
+	@Override
+	protected void grow(int capacity){
+		centers = Arrays.copyOf(centers, capacity);
+		radii = Arrays.copyOf(radii, capacity);
+	}
+	
+	@Override
+	public void search(double[] query, float[] floatQuery, NeighborHeap neighbors){
+		if( numNodes > 0 ){
+			search(0, centerDistance(0, query), query, floatQuery, neighbors);
+		}
+	}
+	
+	/**
+	 * @param node
+	 * @param centerDistance the distance from the query to the node's center
+	 * @param query
+	 * @param floatQuery
+	 * @param neighbors
+	 */
+	private void search(int node, double centerDistance, double[] query, float[] floatQuery, NeighborHeap neighbors){
+		double bound = Math.max(0.0, centerDistance - radii[node]);
+		
+		if( canPrune(bound*bound, floatQuery, neighbors) ){
+			return;
+		}
+		
+		if( lefts[node] == -1 ){
+			scanLeaf(node, query, floatQuery, neighbors);
+			return;
+		}
+		
+		// search the child whose center is closer first
+		double leftDistance = centerDistance(lefts[node], query);
+		double rightDistance = centerDistance(rights[node], query);
+		
+		if( leftDistance <= rightDistance ){
+			search(lefts[node], leftDistance, query, floatQuery, neighbors);
+			search(rights[node], rightDistance, query, floatQuery, neighbors);
+		}else{
+			search(rights[node], rightDistance, query, floatQuery, neighbors);
+			search(lefts[node], leftDistance, query, floatQuery, neighbors);
+		}
+	}
+	
+	/**
+	 * @param node
+	 * @param query
+	 * @return the distance from the query to the center of node
+	 */
+	private double centerDistance(int node, double[] query){
+		double[] center = centers[node];
+		double dist = 0.0;
+		
+		for( int column = 0; column < numColumns; column++ ){
+			double diff = query[column] - center[column];
+			dist += diff*diff;
+		}
+		
+		return Math.sqrt(dist);
+	}
+}
@@ -0,0 +1,345 @@
+package ml.classifiers;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ml.data.DenseMatrix;
+import ml.data.Example;
+
+/**
+ * Finds the nearest rows of a DenseMatrix for many queries at once.  Rather
+ * than sweeping the whole matrix once per query, the queries are taken in
+ * blocks and the matrix in tiles small enough to stay in cache, and every
+ * query of a block is compared against a tile before moving on to the next
+ * one, so each tile is read from memory once per block instead of once per
+ * query.  The blocks of queries are spread across a ForkJoinPool.
+ * 
+ * Within a tile, the squared distances are estimated as |q|^2 + |r|^2 - 2 q.r
+ * with the squared norms of the rows computed once up front, so the inner loop
+ * is just a dot product (in doubles, even in float mode).  The expansion
+ * cancels badly when the norms are much bigger than the distance (e.g. values
+ * with a large offset), so the columns are centered on their means first,
+ * which doesn't change any distance but keeps the norms small.  The estimate
+ * is only used to rule rows out: a row whose estimate is farther than the kth
+ * nearest found so far by more than the estimate's rounding error can't get
+ * in, and every other row has its distance computed directly with
+ * DenseMatrix.squaredDistance.  The neighbors found are therefore the same as
+ * checking every row with DenseMatrix.squaredDistance one query at a time.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class BatchNeighborSearch {
+	// the number of queries compared against each tile of rows
+	private static final int QUERY_BLOCK = 32;
+	
+	// the number of values in a tile of rows (32k doubles is 256KB, about an L2 cache)
+	private static final int TILE_VALUES = 32*1024;
+	
+	// the relative rounding error of a double and a float
+	private static final double DOUBLE_EPSILON = Math.ulp(1.0);
+	private static final double FLOAT_EPSILON = Math.ulp(1.0f);
+	
+	private DenseMatrix matrix;
+	private int numRows;
+	private int numColumns;
+	private int tileRows;
+	private double[] means; // means[column], the mean of the column
+	private double[] rowNorms; // rowNorms[row], the squared norm of the centered row
+	
+	// how far off the estimate of a distance can be, as a multiple of the
+	// norms, and how far below the true distance DenseMatrix.squaredDistance
+	// can be, as a fraction of it (see offer)
+	private double normError;
+	private double distanceError;
+	
+	// the centered values of the current tile, per thread
+	private ThreadLocal<double[]> tiles = new ThreadLocal<double[]>();
+	
+	/**
+	 * @param matrix the rows to search
+	 */
+	public BatchNeighborSearch(DenseMatrix matrix){
+		this.matrix = matrix;
+		numRows = matrix.getNumRows();
+		numColumns = matrix.getNumColumns();
+		tileRows = Math.max(4, TILE_VALUES / Math.max(1, numColumns));
+		means = new double[numColumns];
+		rowNorms = new double[numRows];
+		
+		for( int row = 0; row < numRows; row++ ){
+			for( int column = 0; column < numColumns; column++ ){
+				means[column] += matrix.get(row, column);
+			}
+		}
+		
+		for( int column = 0; column < numColumns; column++ ){
+			means[column] /= Math.max(1, numRows);
+		}
+		
+		for( int row = 0; row < numRows; row++ ){
+			double norm = 0.0;
+			
+			for( int column = 0; column < numColumns; column++ ){
+				double value = matrix.get(row, column) - means[column];
+				norm += value*value;
+			}
+			
+			rowNorms[row] = norm;
+		}
+		
+		// the dot products, norms and centering are each off by at most about
+		// numColumns rounding errors of the norms, and the direct distance by
+		// numColumns rounding errors (of floats in float mode) of the distance.
+		// Both are padded generously, since being too loose only costs a few
+		// more direct distances.
+		normError = 4*(numColumns + 8)*DOUBLE_EPSILON;
+		distanceError = 4*(numColumns + 8)*(matrix.usesFloats() ? FLOAT_EPSILON : DOUBLE_EPSILON);
+	}
+	
+	/**
+	 * Find the k nearest rows for each of a list of examples
+	 * 
+	 * @param examples the queries
+	 * @param k
+	 * @param pool the pool to search on
+	 * @return the nearest rows of each example, in the same order as examples
+	 */
+	public NeighborHeap[] search(List<Example> examples, int k, ForkJoinPool pool){
+		Queries queries = new Queries(examples, k);
+		int numBlocks = (examples.size() + QUERY_BLOCK - 1) / QUERY_BLOCK;
+		
+		if( numBlocks > 0 ){
+			pool.invoke(new BlockTask(queries, 0, numBlocks));
+		}
+		
+		return queries.neighbors;
+	}
+	
+	/**
+	 * Compare a block of queries against every row, a tile of rows at a time
+	 * 
+	 * @param queries
+	 * @param start the first query of the block
+	 * @param end one past the last query of the block
+	 */
+	private void searchBlock(Queries queries, int start, int end){
+		double[] tile = tiles.get();
+		
+		if( tile == null ){
+			tile = new double[tileRows*numColumns];
+			tiles.set(tile);
+		}
+		
+		for( int tileStart = 0; tileStart < numRows; tileStart += tileRows ){
+			int tileEnd = Math.min(numRows, tileStart + tileRows);
+			
+			// center the tile's rows the same way as the queries
+			for( int row = tileStart; row < tileEnd; row++ ){
+				int base = (row - tileStart)*numColumns;
+				
+				for( int column = 0; column < numColumns; column++ ){
+					tile[base + column] = matrix.get(row, column) - means[column];
+				}
+			}
+			
+			// two queries at a time
+			for( int query = start; query < end; query += 2 ){
+				searchTile(tile, queries, query, Math.min(query+1, end-1), tileStart, tileEnd);
+			}
+		}
+	}
+	
+	/**
+	 * Offer the rows of a tile to the neighbors of two queries (which can be
+	 * the same query, for an odd one out).  Two queries and four rows are done
+	 * at once, so each value loaded is used twice and the eight dot products
+	 * are accumulated independently.
+	 * 
+	 * @param tile the centered values of the tile's rows
+	 * @param queries
+	 * @param query
+	 * @param otherQuery
+	 * @param tileStart the first row of the tile
+	 * @param tileEnd one past the last row of the tile
+	 */
+	private void searchTile(double[] tile, Queries queries, int query, int otherQuery, int tileStart, int tileEnd){
+		double[] centered = queries.centered;
+		int queryBase = query*numColumns;
+		int otherBase = otherQuery*numColumns;
+		int row = tileStart;
+		
+		for( ; row + 4 <= tileEnd; row += 4 ){
+			int base0 = (row - tileStart)*numColumns;
+			int base1 = base0 + numColumns;
+			int base2 = base1 + numColumns;
+			int base3 = base2 + numColumns;
+			double dot0 = 0.0;
+			double dot1 = 0.0;
+			double dot2 = 0.0;
+			double dot3 = 0.0;
+			double otherDot0 = 0.0;
+			double otherDot1 = 0.0;
+			double otherDot2 = 0.0;
+			double otherDot3 = 0.0;
+			
+			for( int column = 0; column < numColumns; column++ ){
+				double q = centered[queryBase + column];
+				double otherQ = centered[otherBase + column];
+				double value0 = tile[base0 + column];
+				double value1 = tile[base1 + column];
+				double value2 = tile[base2 + column];
+				double value3 = tile[base3 + column];
+				dot0 += q*value0;
+				dot1 += q*value1;
+				dot2 += q*value2;
+				dot3 += q*value3;
+				otherDot0 += otherQ*value0;
+				otherDot1 += otherQ*value1;
+				otherDot2 += otherQ*value2;
+				otherDot3 += otherQ*value3;
+			}
+			
+			offer(queries, query, row, dot0);
+			offer(queries, query, row+1, dot1);
+			offer(queries, query, row+2, dot2);
+			offer(queries, query, row+3, dot3);
+			
+			if( otherQuery != query ){
+				offer(queries, otherQuery, row, otherDot0);
+				offer(queries, otherQuery, row+1, otherDot1);
+				offer(queries, otherQuery, row+2, otherDot2);
+				offer(queries, otherQuery, row+3, otherDot3);
+			}
+		}
+		
+		for( ; row < tileEnd; row++ ){
+			int base = (row - tileStart)*numColumns;
+			double dot = 0.0;
+			double otherDot = 0.0;
+			
+			for( int column = 0; column < numColumns; column++ ){
+				dot += centered[queryBase + column]*tile[base + column];
+				otherDot += centered[otherBase + column]*tile[base + column];
+			}
+			
+			offer(queries, query, row, dot);
+			
+			if( otherQuery != query ){
+				offer(queries, otherQuery, row, otherDot);
+			}
+		}
+	}
+	
+	/**
+	 * Offer a row to a query's neighbors if its estimated distance doesn't
+	 * rule it out, with its distance computed directly
+	 * 
+	 * @param queries
+	 * @param query
+	 * @param row
+	 * @param dot the dot product of the centered query and row
+	 */
+	private void offer(Queries queries, int query, int row, double dot){
+		NeighborHeap neighbors = queries.neighbors[query];
+		double norms = queries.norms[query] + rowNorms[row];
+		double estimate = norms - 2*dot;
+		
+		// the least the direct distance could be.  The rows come in increasing
+		// order, so a row no closer than the farthest kept can't get in.
+		double bound = (estimate - normError*norms)*(1 - distanceError);
+		
+		if( bound < neighbors.worstDistance() ){
+			if( queries.floatVectors != null ){
+				neighbors.offer(row, matrix.squaredDistance(row, queries.floatVectors[query]));
+			}else{
+				neighbors.offer(row, matrix.squaredDistance(row, queries.vectors[query]));
+			}
+		}
+	}
+	
+	/**
+	 * The queries of a search: their values (as they'd be passed to
+	 * DenseMatrix.squaredDistance), their centered values one after another,
+	 * the squared norms of the centered values and the neighbors found so far
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private class Queries{
+		private double[][] vectors; // null in float mode
+		private float[][] floatVectors; // null if not in float mode
+		private double[] centered;
+		private double[] norms;
+		private NeighborHeap[] neighbors;
+		
+		public Queries(List<Example> examples, int k){
+			int numQueries = examples.size();
+			centered = new double[Math.multiplyExact(numQueries, numColumns)];
+			norms = new double[numQueries];
+			neighbors = new NeighborHeap[numQueries];
+			
+			if( matrix.usesFloats() ){
+				floatVectors = new float[numQueries][];
+			}else{
+				vectors = new double[numQueries][];
+			}
+			
+			for( int query = 0; query < numQueries; query++ ){
+				Example e = examples.get(query);
+				double norm = 0.0;
+				
+				if( floatVectors != null ){
+					floatVectors[query] = matrix.toFloatVector(e);
+				}else{
+					vectors[query] = matrix.toVector(e);
+				}
+				
+				for( int column = 0; column < numColumns; column++ ){
+					double value = (floatVectors != null ? floatVectors[query][column] : vectors[query][column]) -
+							means[column];
+					centered[query*numColumns + column] = value;
+					norm += value*value;
+				}
+				
+				norms[query] = norm;
+				neighbors[query] = new NeighborHeap(k);
+			}
+		}
+	}
+	
+	/**
+	 * Searches the blocks of queries between start and end by splitting the
+	 * range in half until there's a single block.
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private class BlockTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		
+		private Queries queries;
+		private int start;
+		private int end;
+		
+		public BlockTask(Queries queries, int start, int end){
+			this.queries = queries;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if( end - start > 1 ){
+				int middle = (start + end) / 2;
+				invokeAll(new BlockTask(queries, start, middle), new BlockTask(queries, middle, end));
+			}else{
+				searchBlock(queries, start*QUERY_BLOCK, Math.min(queries.neighbors.length, end*QUERY_BLOCK));
+			}
+		}
+	}
+}
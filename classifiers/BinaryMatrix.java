@@ -0,0 +1,144 @@
+package ml.classifiers;
+
+import ml.data.DenseMatrix;
+import ml.data.Example;
+
+/**
+ * The rows of a DenseMatrix whose values are all 0 or 1, packed 64 columns
+ * to a long.  For 0/1 values, the squared euclidean distance between two rows
+ * is the number of columns they differ in, so it can be computed with an XOR
+ * and a bit count per 64 columns instead of a subtraction and multiplication
+ * per column, and a row takes 1/64th the memory of doubles.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class BinaryMatrix extends NeighborSearch {
+	private DenseMatrix matrix;
+	private NeighborSearch fallback; // for examples that aren't all 0s and 1s
+	private int numRows;
+	private int numWords; // the number of longs per row
+	private long[] bits; // bits[row*numWords + column/64], bit column%64 is the value of column
+	
+	/**
+	 * Pack the rows of a matrix.  Should only be called if isBinary(matrix).
+	 * 
+	 * @param matrix
+	 * @param fallback a search of the same rows for examples with values
+	 * other than 0 and 1
+	 */
+	public BinaryMatrix(DenseMatrix matrix, NeighborSearch fallback){
+		this.matrix = matrix;
+		this.fallback = fallback;
+		numRows = matrix.getNumRows();
+		int numColumns = matrix.getNumColumns();
+		numWords = (numColumns + 63) / 64;
+		bits = new long[Math.multiplyExact(numRows, numWords)];
+		
+		for( int row = 0; row < numRows; row++ ){
+			int base = row*numWords;
+			
+			for( int column = 0; column < numColumns; column++ ){
+				if( matrix.get(row, column) == 1.0 ){
+					bits[base + (column >>> 6)] |= 1L << column;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param matrix
+	 * @return whether or not every value in the matrix is 0 or 1
+	 */
+	public static boolean isBinary(DenseMatrix matrix){
+		for( int row = 0; row < matrix.getNumRows(); row++ ){
+			for( int column = 0; column < matrix.getNumColumns(); column++ ){
+				double value = matrix.get(row, column);
+				
+				if( value != 0.0 && value != 1.0 ){
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public void search(Example example, NeighborHeap neighbors){
+		long[] packed = pack(example);
+		
+		if( packed != null ){
+			search(packed, neighbors);
+		}else{
+			fallback.search(example, neighbors);
+		}
+	}
+	
+	/**
+	 * Pack an example's values in the same column order as the matrix
+	 * 
+	 * @param e
+	 * @return the packed values, or null if any of them isn't 0 or 1
+	 */
+	public long[] pack(Example e){
+		double[] vector = matrix.toVector(e);
+		long[] packed = new long[numWords];
+		
+		for( int column = 0; column < vector.length; column++ ){
+			if( vector[column] == 1.0 ){
+				packed[column >>> 6] |= 1L << column;
+			}else if( vector[column] != 0.0 ){
+				return null;
+			}
+		}
+		
+		return packed;
+	}
+	
+	/**
+	 * Offer every row to neighbors, in increasing order, with the number of
+	 * columns it differs from the query in as the distance
+	 * 
+	 * @param query a packed example (see pack)
+	 * @param neighbors
+	 */
+	public void search(long[] query, NeighborHeap neighbors){
+		// the rows come in increasing order, so a row no closer than the
+		// farthest kept can't get in
+		double worst = neighbors.worstDistance();
+		
+		if( numWords == 1 ){
+			// the common case of at most 64 features gets its own loop
+			long word = query[0];
+			
+			for( int row = 0; row < numRows; row++ ){
+				int dist = Long.bitCount(bits[row] ^ word);
+				
+				if( dist < worst ){
+					neighbors.offer(row, dist);
+					worst = neighbors.worstDistance();
+				}
+			}
+			
+			return;
+		}
+		
+		for( int row = 0; row < numRows; row++ ){
+			int base = row*numWords;
+			int dist = 0;
+			
+			for( int word = 0; word < numWords; word++ ){
+				dist += Long.bitCount(bits[base + word] ^ query[word]);
+			}
+			
+			if( dist < worst ){
+				neighbors.offer(row, dist);
+				worst = neighbors.worstDistance();
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package ml.classifiers;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import ml.data.DataSet;
+import ml.data.DenseMatrix;
+import ml.data.Example;
+
+/**
+ * Checks the distance of every training row.  Dense data is compared
+ * against the rows of a DenseMatrix (in floats if it stores floats), and
+ * sparse data against the examples themselves, one feature at a time (see
+ * getSquaredDistance).
+ * 
+ * For dense data, a list of examples is searched all at once with
+ * BatchNeighborSearch on the common ForkJoinPool, which finds the same
+ * neighbors.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class BruteForceSearch extends NeighborSearch {
+	private DataSet data;
+	private DenseMatrix matrix; // null for sparse data
+	private BatchNeighborSearch batch; // created when first needed
+	
+	/**
+	 * @param data the training data
+	 * @param matrix the training data's rows (see DataSet.getDenseMatrix), or
+	 * null to compare against the examples
+	 */
+	public BruteForceSearch(DataSet data, DenseMatrix matrix){
+		this.data = data;
+		this.matrix = matrix;
+	}
+	
+	@Override
+	public void search(Example example, NeighborHeap neighbors){
+		search(example, null, neighbors);
+	}
+	
+	/**
+	 * Offer only some of the rows to neighbors (e.g. the candidates of an
+	 * approximate search)
+	 * 
+	 * @param example
+	 * @param rows the rows to check, or null for all of them
+	 * @param neighbors
+	 */
+	public void search(Example example, int[] rows, NeighborHeap neighbors){
+		int numRows = matrix != null ? matrix.getNumRows() : data.getData().size();
+		int numChecked = rows != null ? rows.length : numRows;
+		
+		if( matrix == null ){
+			List<Example> examples = data.getData();
+			
+			for( int i = 0; i < numChecked; i++ ){
+				int row = rows != null ? rows[i] : i;
+				neighbors.offer(row, getSquaredDistance(data, example, examples.get(row)));
+			}
+		}else if( matrix.usesFloats() ){
+			float[] vector = matrix.toFloatVector(example);
+			
+			for( int i = 0; i < numChecked; i++ ){
+				int row = rows != null ? rows[i] : i;
+				neighbors.offer(row, matrix.squaredDistance(row, vector));
+			}
+		}else{
+			double[] vector = matrix.toVector(example);
+			
+			for( int i = 0; i < numChecked; i++ ){
+				int row = rows != null ? rows[i] : i;
+				neighbors.offer(row, matrix.squaredDistance(row, vector));
+			}
+		}
+	}
+	
+	@Override
+	public NeighborHeap[] search(List<Example> examples, int k){
+		if( matrix == null ){
+			return super.search(examples, k);
+		}
+		
+		if( batch == null ){
+			batch = new BatchNeighborSearch(matrix);
+		}
+		
+		return batch.search(examples, k, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the squared distance between two examples over the features of a
+	 * data set.  Only the features the examples have are looked at (rather
+	 * than every feature of the data set), which matters for sparse data.
+	 * 
+	 * @param data the data set whose features count (see DataSet.hasFeature)
+	 * @param e1
+	 * @param e2
+	 * @return the squared distance between the examples
+	 */
+	public static double getSquaredDistance(DataSet data, Example e1, Example e2){
+		double dist = 0.0;
+		int i = 0;
+		int j = 0;
+		
+		// both are sorted by feature index, so merge them
+		while( i < e1.getNumFeatures() || j < e2.getNumFeatures() ){
+			int f1 = i < e1.getNumFeatures() ? e1.getFeatureIndexAt(i) : Integer.MAX_VALUE;
+			int f2 = j < e2.getNumFeatures() ? e2.getFeatureIndexAt(j) : Integer.MAX_VALUE;
+			int featureNum = Math.min(f1, f2);
+			double diff = (f1 == featureNum ? e1.getFeatureValueAt(i++) : 0.0) -
+					(f2 == featureNum ? e2.getFeatureValueAt(j++) : 0.0);
+			
+			if( data.hasFeature(featureNum) ){
+				dist += diff*diff;
+			}
+		}
+		
+		return dist;
+	}
+}
@@ -1,19 +1,23 @@
 package ml.classifiers;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import ml.data.BitColumnData;
 import ml.data.DataSet;
 import ml.data.Example;
-import ml.utils.HashMapCounter;
+import ml.data.QuantizedData;
 
 /**
  * Decision tree classifier that supports multiclass classification.
  * 
  * The classifier handles non-binary features, however, when deciding on splits it
- * considers splitting by comparing zero vs. non-zero for each feature.
+ * considers splitting by comparing zero vs. non-zero for each feature.  Alternatively
+ * (see setHistogramBins), the features can be quantized into bins and split on the
+ * best threshold between bins.
  * 
  *  Patrick Little and Molly Driscoll
  * CS158 Final Project
@@ -27,6 +31,23 @@ public class DecisionTreeClassifier implements Classifier{
 	private DecisionTreeNode decisionTree;
 	private int depthMax = Integer.MAX_VALUE;
 	
+	// the training data, only kept around while building the tree.  A set of rows
+	// is a set of bits (see BitColumnData), so splits are counted a word at a time.
+	private BitColumnData bits;
+	private double[] classLabels; // the label of each class id
+	
+	// sparse data is split a row at a time instead, since the bits would take a
+	// bit per feature per row no matter how few features each example has
+	private List<Example> examples;
+	private int[] classIds; // the class id of each row's label
+	private int[] rightCounts; // scratch, rightCounts[featureIndex*numClasses + classId]
+	
+	// for threshold splits, the number of bins to quantize the features into (0 for zero vs. non-zero splits)
+	private int histogramBins = 0;
+	private QuantizedData quantized;
+	private HistogramSplitFinder splitFinder;
+	private int[] splitFeatures; // the feature indices in increasing order, one per histogram
+	
 	public void train(DataSet data) {
 		if( data.getData().size() == 0 ){
 			throw new RuntimeException("Tried to train without any data");
@@ -34,7 +55,86 @@ public class DecisionTreeClassifier implements Classifier{
 		
 		featureMap = data.getFeatureMap();
 		featureIndices = data.getAllFeatureIndices();
-		decisionTree = buildTree(data.getData(), new HashSet<Integer>(), depthMax);
+		classLabels = data.getClassLabels();
+		
+		if( histogramBins > 0 ){
+			trainWithHistograms(data);
+		}else if( data.isDense() ){
+			bits = data.getBitColumns();
+			long[] allRows = bits.allRows();
+			decisionTree = buildTree(allRows, bits.getNumRows(), new HashSet<Integer>(), depthMax);
+		}else{
+			trainSparse(data);
+		}
+		
+		// don't hold on to the training data
+		bits = null;
+		examples = null;
+		classIds = null;
+		rightCounts = null;
+		quantized = null;
+		splitFinder = null;
+		classLabels = null;
+	}
+	
+	/**
+	 * Build the tree with threshold splits found from histograms of the quantized data
+	 * 
+	 * @param data
+	 */
+	private void trainWithHistograms(DataSet data){
+		quantized = data.getQuantizedData(histogramBins);
+		splitFinder = new HistogramSplitFinder(quantized);
+		
+		splitFeatures = new int[featureIndices.size()];
+		int position = 0;
+		
+		for( int f: featureIndices ){
+			splitFeatures[position++] = f;
+		}
+		
+		Arrays.sort(splitFeatures);
+		
+		int size = quantized.getNumRows();
+		int[] allRows = new int[size];
+		
+		for( int row = 0; row < size; row++ ){
+			allRows[row] = row;
+		}
+		
+		int[][] histograms = new int[splitFeatures.length][];
+		
+		for( int i = 0; i < splitFeatures.length; i++ ){
+			histograms[i] = splitFinder.histogram(splitFeatures[i], allRows, size);
+		}
+		
+		decisionTree = buildHistogramTree(allRows, histograms, new HashSet<Integer>(), depthMax);
+	}
+	
+	/**
+	 * Build the tree over the rows of a sparse data set
+	 * 
+	 * @param data
+	 */
+	private void trainSparse(DataSet data){
+		examples = data.getData();
+		classIds = data.getClassIdColumn();
+		
+		int numIndices = 0;
+		
+		for( int f: featureIndices ){
+			numIndices = Math.max(numIndices, f+1);
+		}
+		
+		rightCounts = new int[numIndices*classLabels.length];
+		
+		int[] allRows = new int[examples.size()];
+		
+		for( int row = 0; row < allRows.length; row++ ){
+			allRows[row] = row;
+		}
+		
+		decisionTree = buildSparseTree(allRows, new HashSet<Integer>(), depthMax);
 	}
 	
 	/**
@@ -46,21 +146,43 @@ public class DecisionTreeClassifier implements Classifier{
 		this.depthMax = depthMax;
 	}
 	
+	/**
+	 * Split on thresholds rather than zero vs. non-zero, with the features
+	 * quantized into at most numBins bins (see QuantizedData).  Only a
+	 * threshold between two bins is considered, so more bins means finer
+	 * splits but more work per split.
+	 * 
+	 * @param numBins the number of bins (between 2 and QuantizedData.MAX_BINS), or 0 for zero vs. non-zero splits
+	 */
+	public void setHistogramBins(int numBins){
+		histogramBins = numBins;
+	}
+	
 	/**
 	 * Helper method for building the decision tree.
 	 * 
-	 * @param currentData the data (non-empty) to build the tree over
+	 * @param currentData the rows of the data to build the tree over
+	 * @param size the number of rows in currentData (non-zero)
 	 * @param usedFeatures the features that have been used already
 	 * @param depthLimit the maximum depth we can build this tree
 	 * @return the learned decision tree
 	 */
-	private DecisionTreeNode buildTree(ArrayList<Example> currentData, HashSet<Integer> usedFeatures, int depthLimit){
-		DataMajority majority = getMajorityLabel(currentData);
+	private DecisionTreeNode buildTree(long[] currentData, int size, HashSet<Integer> usedFeatures, int depthLimit){
+		// the rows of each class, which every split is counted against
+		long[][] classRows = new long[classLabels.length][];
+		int[] counts = new int[classLabels.length];
+		
+		for( int classId = 0; classId < classLabels.length; classId++ ){
+			classRows[classId] = BitColumnData.and(currentData, bits.getClassRows(classId));
+			counts[classId] = BitColumnData.count(classRows[classId]);
+		}
+		
+		DataMajority majority = getMajorityLabel(counts, size);
 				
 		// base cases:
 		// 1. they're all the same label
 		// 2. we're out of features to examine
-		if( majority.majorityCount == currentData.size() ||
+		if( majority.majorityCount == size ||
 			usedFeatures.size() == featureIndices.size() ||
 			depthLimit == 0){
 			return new DecisionTreeNode(majority.majorityLabel, majority.confidence);
@@ -68,11 +190,14 @@ public class DecisionTreeClassifier implements Classifier{
 			// check if all examples have the same features
 					
 			// find the best feature that hasn't been used yet to split on
-			int bestFeature = getBestFeatureIndex(currentData, usedFeatures);
+			int bestFeature = getBestFeatureIndex(classRows, counts, size, usedFeatures);
 			
 			// bestFeature != -1
 			// split on the best feature
-			ArrayList<Example>[] splits = splitData(currentData, bestFeature);
+			long[] right = BitColumnData.and(currentData, bits.getColumn(bestFeature));
+			long[] left = BitColumnData.andNot(currentData, bits.getColumn(bestFeature));
+			int rightSize = BitColumnData.count(right);
+			int leftSize = size - rightSize;
 			
 			// create a new decision tree node
 			DecisionTreeNode node = new DecisionTreeNode(bestFeature);
@@ -81,17 +206,17 @@ public class DecisionTreeClassifier implements Classifier{
 			featureCopy.add(bestFeature);
 			
 			// left branch
-			if( splits[0].size() == 0 ){
+			if( leftSize == 0 ){
 				node.setLeft(new DecisionTreeNode(majority.majorityLabel, majority.confidence));
 			}else{
-				node.setLeft(buildTree(splits[0],featureCopy, depthLimit-1));
+				node.setLeft(buildTree(left, leftSize, featureCopy, depthLimit-1));
 			}
 			
 			// right branch
-			if( splits[1].size() == 0 ){
+			if( rightSize == 0 ){
 				node.setRight(new DecisionTreeNode(majority.majorityLabel, majority.confidence));
 			}else{
-				node.setRight(buildTree(splits[1], featureCopy, depthLimit-1));
+				node.setRight(buildTree(right, rightSize, featureCopy, depthLimit-1));
 			}
 			
 			return node;
@@ -99,20 +224,52 @@ public class DecisionTreeClassifier implements Classifier{
 	}
 	
 	/**
-	 * Get the best feature to split on based on training error.
+	 * Helper method for building the decision tree over the rows of sparse
+	 * data.  Splits are the same as buildTree, but the rows going right are
+	 * counted from the non-zero features of each example.
 	 * 
-	 * @param currentData the current set of examples
-	 * @param usedFeatures which features have been used already and are NOT eligible for splitting on
-	 * @return the index of the best feature
+	 * @param rows the rows of the data to build the tree over (non-empty)
+	 * @param usedFeatures the features that have been used already
+	 * @param depthLimit the maximum depth we can build this tree
+	 * @return the learned decision tree
 	 */
-	private int getBestFeatureIndex(ArrayList<Example> currentData, HashSet<Integer> usedFeatures){
+	private DecisionTreeNode buildSparseTree(int[] rows, HashSet<Integer> usedFeatures, int depthLimit){
+		int size = rows.length;
+		int numClasses = classLabels.length;
+		int[] counts = new int[numClasses];
+		
+		for( int row: rows ){
+			counts[classIds[row]]++;
+		}
+		
+		DataMajority majority = getMajorityLabel(counts, size);
+		
+		// same base cases as buildTree
+		if( majority.majorityCount == size ||
+			usedFeatures.size() == featureIndices.size() ||
+			depthLimit == 0){
+			return new DecisionTreeNode(majority.majorityLabel, majority.confidence);
+		}
+		
+		// count the rows of each class with a non-zero value for each feature
+		countRight(rows, 1);
+		
 		int bestFeature = -1;
 		double bestFeatureScore = 1.0; // lower is better for now
 		
-		for( int featureIndex: featureIndices){
+		for( int featureIndex: featureIndices ){
 			if( !usedFeatures.contains(featureIndex) ){
-				double error = averageTrainingError(currentData, featureIndex);
-									
+				int leftCount = 0;
+				int rightCount = 0;
+				
+				for( int classId = 0; classId < numClasses; classId++ ){
+					int right = rightCounts[featureIndex*numClasses + classId];
+					leftCount = Math.max(leftCount, counts[classId] - right);
+					rightCount = Math.max(rightCount, right);
+				}
+				
+				double error = 1 - (leftCount+rightCount)/(double)size;
+				
 				if( error < bestFeatureScore ||
 					(error == bestFeatureScore && featureIndex < bestFeature )){
 					bestFeatureScore = error;
@@ -121,80 +278,261 @@ public class DecisionTreeClassifier implements Classifier{
 			}
 		}
 		
-		return bestFeature;
+		// clear the counts for the next node
+		countRight(rows, -1);
+		
+		// split on the best feature
+		int rightSize = 0;
+		
+		for( int row: rows ){
+			if( examples.get(row).getFeature(bestFeature) != DecisionTreeNode.LEFT_BRANCH ){
+				rightSize++;
+			}
+		}
+		
+		int[] left = new int[size - rightSize];
+		int[] right = new int[rightSize];
+		int l = 0;
+		int r = 0;
+		
+		for( int row: rows ){
+			if( examples.get(row).getFeature(bestFeature) != DecisionTreeNode.LEFT_BRANCH ){
+				right[r++] = row;
+			}else{
+				left[l++] = row;
+			}
+		}
+		
+		DecisionTreeNode node = new DecisionTreeNode(bestFeature);
+		
+		HashSet<Integer> featureCopy = (HashSet<Integer>)usedFeatures.clone();
+		featureCopy.add(bestFeature);
+		
+		// left branch
+		if( left.length == 0 ){
+			node.setLeft(new DecisionTreeNode(majority.majorityLabel, majority.confidence));
+		}else{
+			node.setLeft(buildSparseTree(left, featureCopy, depthLimit-1));
+		}
+		
+		// right branch
+		if( right.length == 0 ){
+			node.setRight(new DecisionTreeNode(majority.majorityLabel, majority.confidence));
+		}else{
+			node.setRight(buildSparseTree(right, featureCopy, depthLimit-1));
+		}
+		
+		return node;
 	}
 	
 	/**
-	 * Get the average training error on this data set if we split on featureIndex
+	 * Add amount to rightCounts for each non-zero feature of each row.  Only
+	 * the counts of features the rows have are touched, so counting again with
+	 * the negated amount puts them back.
 	 * 
-	 * @param data the current data
-	 * @param featureIndex the feature we're considering splitting on
-	 * @return the error
+	 * @param rows the rows to count
+	 * @param amount how much to add for each row
 	 */
-	private double averageTrainingError(ArrayList<Example> data, int featureIndex){		
-		ArrayList<Example>[] splits = splitData(data, featureIndex);
+	private void countRight(int[] rows, int amount){
+		int numClasses = classLabels.length;
+		int numIndices = rightCounts.length / numClasses;
 		
-		int leftCount = splits[0].size() > 0 ? getMajorityLabel(splits[0]).majorityCount : 0;
-		int rightCount = splits[1].size() > 0 ? getMajorityLabel(splits[1]).majorityCount : 0;
-		
-		double accuracy = (leftCount+rightCount)/(double)data.size();
-		return 1-accuracy;
+		for( int row: rows ){
+			Example e = examples.get(row);
+			int classId = classIds[row];
+			
+			for( int i = 0; i < e.getNumFeatures(); i++ ){
+				int f = e.getFeatureIndexAt(i);
+				
+				if( f < numIndices && e.getFeatureValueAt(i) != DecisionTreeNode.LEFT_BRANCH ){
+					rightCounts[f*numClasses + classId] += amount;
+				}
+			}
+		}
 	}
 	
 	/**
-	 * Split the data based on featureIndex
+	 * Helper method for building the decision tree with threshold splits.
 	 * 
-	 * @param data the data to be split
-	 * @param featureIndex the feature to split on
-	 * @return the split of the data.  Entry 0 is the left branch data and entry 1 the right branch data.
+	 * @param rows the rows of the data to build the tree over (non-empty)
+	 * @param histograms the histogram of rows for each feature in splitFeatures (null if used)
+	 * @param usedFeatures the features that have been used already
+	 * @param depthLimit the maximum depth we can build this tree
+	 * @return the learned decision tree
 	 */
-	private ArrayList<Example>[] splitData(ArrayList<Example> data, int featureIndex){
-		// split the data based on this feature
-		ArrayList<Example>[] splits = new ArrayList[2];
-		splits[0] = new ArrayList<Example>();
-		splits[1] = new ArrayList<Example>();
+	private DecisionTreeNode buildHistogramTree(int[] rows, int[][] histograms, HashSet<Integer> usedFeatures, int depthLimit){
+		int size = rows.length;
+		int[] classIds = quantized.getClassIds();
+		int[] counts = new int[classLabels.length];
+		
+		for( int row: rows ){
+			counts[classIds[row]]++;
+		}
+		
+		DataMajority majority = getMajorityLabel(counts, size);
+		
+		// same base cases as buildTree
+		if( majority.majorityCount == size ||
+			usedFeatures.size() == featureIndices.size() ||
+			depthLimit == 0){
+			return new DecisionTreeNode(majority.majorityLabel, majority.confidence);
+		}
+		
+		// find the best split of a feature that hasn't been used yet (ties to the smaller feature)
+		HistogramSplitFinder.Split best = null;
+		
+		for( int i = 0; i < splitFeatures.length; i++ ){
+			if( histograms[i] != null ){
+				HistogramSplitFinder.Split split = splitFinder.findBestSplit(splitFeatures[i], histograms[i], size);
 				
-		for( Example d: data){
-			double value = d.getFeature(featureIndex);
-			
-			if( value == DecisionTreeNode.LEFT_BRANCH ){
-				splits[0].add(d);
+				if( split != null && (best == null || split.error < best.error) ){
+					best = split;
+				}
+			}
+		}
+		
+		// none of the remaining features have more than one value
+		if( best == null ){
+			return new DecisionTreeNode(majority.majorityLabel, majority.confidence);
+		}
+		
+		// split the rows on the threshold
+		byte[] column = quantized.getColumn(best.featureIndex);
+		int leftSize = 0;
+		
+		for( int row: rows ){
+			if( (column[row] & 0xFF) <= best.bin ){
+				leftSize++;
+			}
+		}
+		
+		int[] left = new int[leftSize];
+		int[] right = new int[size - leftSize];
+		int l = 0;
+		int r = 0;
+		
+		for( int row: rows ){
+			if( (column[row] & 0xFF) <= best.bin ){
+				left[l++] = row;
 			}else{
-				splits[1].add(d);
+				right[r++] = row;
+			}
+		}
+		
+		DecisionTreeNode node = new DecisionTreeNode(best.featureIndex, best.threshold);
+		
+		HashSet<Integer> featureCopy = (HashSet<Integer>)usedFeatures.clone();
+		featureCopy.add(best.featureIndex);
+		
+		// count the smaller side and get the bigger side by subtracting it from this node's histograms
+		int[] smaller = left.length <= right.length ? left : right;
+		int[][] smallerHistograms = new int[splitFeatures.length][];
+		int[][] biggerHistograms = new int[splitFeatures.length][];
+		
+		for( int i = 0; i < splitFeatures.length; i++ ){
+			if( histograms[i] != null && splitFeatures[i] != best.featureIndex && smaller.length > 0 ){
+				smallerHistograms[i] = splitFinder.histogram(splitFeatures[i], smaller, smaller.length);
+				biggerHistograms[i] = HistogramSplitFinder.subtract(histograms[i], smallerHistograms[i]);
+			}else if( histograms[i] != null && splitFeatures[i] != best.featureIndex ){
+				biggerHistograms[i] = histograms[i];
 			}
 		}
 		
-		return splits;
+		int[][] leftHistograms = smaller == left ? smallerHistograms : biggerHistograms;
+		int[][] rightHistograms = smaller == left ? biggerHistograms : smallerHistograms;
+		
+		// left branch
+		if( left.length == 0 ){
+			node.setLeft(new DecisionTreeNode(majority.majorityLabel, majority.confidence));
+		}else{
+			node.setLeft(buildHistogramTree(left, leftHistograms, featureCopy, depthLimit-1));
+		}
+		
+		// right branch
+		if( right.length == 0 ){
+			node.setRight(new DecisionTreeNode(majority.majorityLabel, majority.confidence));
+		}else{
+			node.setRight(buildHistogramTree(right, rightHistograms, featureCopy, depthLimit-1));
+		}
+		
+		return node;
 	}
 	
-	public String toString(){
-		return decisionTree.treeString(featureMap);
+	/**
+	 * Get the best feature to split on based on training error.
+	 * 
+	 * @param classRows the rows of the current set of examples with each class id
+	 * @param counts the number of rows in each of classRows
+	 * @param size the number of rows in the current set of examples
+	 * @param usedFeatures which features have been used already and are NOT eligible for splitting on
+	 * @return the index of the best feature
+	 */
+	private int getBestFeatureIndex(long[][] classRows, int[] counts, int size, HashSet<Integer> usedFeatures){
+		int bestFeature = -1;
+		double bestFeatureScore = 1.0; // lower is better for now
+		
+		for( int featureIndex: featureIndices){
+			if( !usedFeatures.contains(featureIndex) ){
+				double error = averageTrainingError(classRows, counts, size, featureIndex);
+									
+				if( error < bestFeatureScore ||
+					(error == bestFeatureScore && featureIndex < bestFeature )){
+					bestFeatureScore = error;
+					bestFeature = featureIndex;
+				}
+			}
+		}
+		
+		return bestFeature;
 	}
 	
 	/**
-	 * given the data, calculate the majority label and how many times it occurs in the data
+	 * Get the average training error on this data set if we split on featureIndex
 	 * 
-	 * @param data
-	 * @return majority information from the data
+	 * @param classRows the rows of the current data with each class id
+	 * @param counts the number of rows in each of classRows
+	 * @param size the number of rows in the current data
+	 * @param featureIndex the feature we're considering splitting on
+	 * @return the error
 	 */
-	private DataMajority getMajorityLabel(ArrayList<Example> data){
-		HashMapCounter<Double> counter = new HashMapCounter<Double>();
+	private double averageTrainingError(long[][] classRows, int[] counts, int size, int featureIndex){
+		long[] column = bits.getColumn(featureIndex);
+		int leftCount = 0;
+		int rightCount = 0;
 		
-		for( Example d: data ){
-			counter.increment(d.getLabel());
+		// the rows with a non-zero value go right, the rest go left
+		for( int classId = 0; classId < counts.length; classId++ ){
+			int right = BitColumnData.countBoth(classRows[classId], column);
+			leftCount = Math.max(leftCount, counts[classId] - right);
+			rightCount = Math.max(rightCount, right);
 		}
 		
-		double maxLabel = 0.0;
-		int maxCount = -1;
+		double accuracy = (leftCount+rightCount)/(double)size;
+		return 1-accuracy;
+	}
+	
+	public String toString(){
+		return decisionTree.treeString(featureMap);
+	}
+	
+	/**
+	 * Calculate the majority label from the label counts.  Ties go to the
+	 * smaller label.
+	 * 
+	 * @param counts the number of times each class id occurs
+	 * @param size the number of examples counted
+	 * @return majority information from the counts
+	 */
+	private DataMajority getMajorityLabel(int[] counts, int size){
+		int maxClass = 0;
 		
-		for( Double key: counter.keySet() ){
-			if( counter.get(key) > maxCount ){
-				maxCount = counter.get(key);
-				maxLabel = key;
+		for( int classId = 1; classId < counts.length; classId++ ){
+			if( counts[classId] > counts[maxClass] ){
+				maxClass = classId;
 			}
 		}
 		
-		return new DataMajority(maxLabel, maxCount, ((double)maxCount)/data.size());
+		return new DataMajority(classLabels[maxClass], counts[maxClass], ((double)counts[maxClass])/size);
 	}
 		
 	@Override
@@ -219,7 +557,7 @@ public class DecisionTreeClassifier implements Classifier{
 		while( !current.isLeaf() ){
 			int feature = current.getFeatureIndex();
 			
-			if( example.getFeature(feature) == DecisionTreeNode.LEFT_BRANCH ){
+			if( current.goesLeft(example.getFeature(feature)) ){
 				// go left
 				current = current.getLeft();
 			}else{
@@ -28,6 +28,8 @@ public class DecisionTreeNode {
 	
 	// only applicable if it's an internal node
 	private int featureIndex;  // the index of the feature we're checking
+	private boolean hasThreshold = false; // whether values <= threshold go left (otherwise LEFT_BRANCH does)
+	private double threshold;
 	
 	private DecisionTreeNode left;
 	private DecisionTreeNode right;
@@ -52,6 +54,19 @@ public class DecisionTreeNode {
 		leaf = false;
 		this.featureIndex = featureIndex;
 	}
+	
+	/**
+	 * Create an internal node that sends examples whose value for featureIndex is
+	 * at most threshold down the left branch (and the rest right)
+	 * 
+	 * @param featureIndex
+	 * @param threshold
+	 */
+	public DecisionTreeNode(int featureIndex, double threshold){
+		this(featureIndex);
+		hasThreshold = true;
+		this.threshold = threshold;
+	}
 
 	/**
 	 * @return whether or not this node is a leaf
@@ -135,6 +150,20 @@ public class DecisionTreeNode {
 		return featureIndex;
 	}
 	
+	/**
+	 * Check which branch an example goes down at this internal node
+	 * 
+	 * @param value the example's value for the feature this node splits on
+	 * @return whether or not the example goes down the left branch
+	 */
+	public boolean goesLeft(double value){
+		if( leaf ){
+			throw new RuntimeException("goesLeft can only be called on internal nodes");
+		}
+		
+		return hasThreshold ? value <= threshold : value == LEFT_BRANCH;
+	}
+	
 	/**
 	 * Get a formatted string representation of this DecisionTreeNode and all nodes below it.
 	 * This basic version only prints out feature indices.
@@ -173,6 +202,10 @@ public class DecisionTreeNode {
 				featureString = headers.get(featureIndex);
 			}
 			
+			if( hasThreshold ){
+				featureString += " <= " + threshold;
+			}
+			
 			return "(" + featureString + "\n" + 
 		            spaces + left.treeStringHelper(spaces + "  ", headers) + "\n" +
 					spaces + right.treeStringHelper(spaces + "  ", headers) + ")";
@@ -33,6 +33,11 @@ public class GradientDescentClassifier implements Classifier {
 	protected HashMap<Integer, Double> weights; // the feature weights
 	protected double b = 0; // the intersect weight
 	
+	// in float mode the weights are kept in an array indexed by feature instead
+	protected boolean useFloats = false;
+	protected float[] floatWeights;
+	protected boolean[] hasWeight; // which entries of floatWeights are features of the training data
+	
 	protected int iterations = 10;
 	
 	//INstance variable that are used to customize loss and regularization
@@ -66,8 +71,30 @@ public class GradientDescentClassifier implements Classifier {
 	 * @param features
 	 */
 	protected void initializeWeights(Set<Integer> features){
-		weights = getZeroWeights(features);
 		b = 0;
+		
+		if( useFloats ){
+			int maxIndex = -1;
+			
+			for( int f: features ){
+				maxIndex = Math.max(maxIndex, f);
+			}
+			
+			floatWeights = new float[maxIndex+1];
+			hasWeight = new boolean[maxIndex+1];
+			
+			for( int f: features ){
+				if( f >= 0 ){
+					hasWeight[f] = true;
+				}
+			}
+			
+			weights = null;
+		}else{
+			weights = getZeroWeights(features);
+			floatWeights = null;
+			hasWeight = null;
+		}
 	}
 	
 	/**
@@ -102,6 +129,17 @@ public class GradientDescentClassifier implements Classifier {
 		}
 	}
 	
+	/**
+	 * Keep the weights as floats rather than doubles, and compute the distance
+	 * from the hyperplane in floats.  This uses less memory but is less precise.
+	 * Takes effect the next time the classifier is trained.
+	 * 
+	 * @param useFloats
+	 */
+	public void setUseFloats(boolean useFloats){
+		this.useFloats = useFloats;
+	}
+	
 	/**
 	 * Sets the value for lambda, the regularization constant
 	 * 
@@ -129,24 +167,45 @@ public class GradientDescentClassifier implements Classifier {
 	public void train(DataSet data) {
 		initializeWeights(data.getAllFeatureIndices());
 		
-		ArrayList<Example> training = (ArrayList<Example>)data.getData().clone();
+		// streaming data sets are read from disk in file order each iteration
+		// rather than being copied into memory and shuffled
+		ArrayList<Example> training = data.isStreaming() ? null : new ArrayList<Example>(data.getData());
 		
 		for( int it = 0; it < iterations; it++ ){
-			Collections.shuffle(training);
+			Iterable<Example> examples = data;
 			
-			for( Example e: training ){
+			if( training != null ){
+				Collections.shuffle(training);
+				examples = training;
+			}
+			
+			for( Example e: examples ){
 
 				double label = e.getLabel();
 				double prediction = getPrediction(e);
-				double distance = getDistanceFromHyperplane(e,weights,b);
+				double distance = getDistanceFromHyperplane(e);
 				
 				// update the weights
 				//for( Integer featureIndex: weights.keySet() ){
-				for( Integer featureIndex: e.getFeatureSet() ){
-					double oldWeight = weights.get(featureIndex);
-					double featureValue = e.getFeature(featureIndex);
-					weights.put(featureIndex, oldWeight + (eta*(getLossCorrection(label, 
-							distance, featureValue) - getRegularizationCorrection(oldWeight))));
+				for( int i = 0; i < e.getNumFeatures(); i++ ){
+					int featureIndex = e.getFeatureIndexAt(i);
+					double featureValue = e.getFeatureValueAt(i);
+					
+					// the example may have features that aren't part of the data set (see DataSet.project)
+					if( useFloats ){
+						if( featureIndex >= 0 && featureIndex < hasWeight.length && hasWeight[featureIndex] ){
+							float oldWeight = floatWeights[featureIndex];
+							floatWeights[featureIndex] = (float)(oldWeight + (eta*(getLossCorrection(label, 
+									distance, featureValue) - getRegularizationCorrection(oldWeight))));
+						}
+					}else{
+						Double oldWeight = weights.get(featureIndex);
+						
+						if( oldWeight != null ){
+							weights.put(featureIndex, oldWeight + (eta*(getLossCorrection(label, 
+									distance, featureValue) - getRegularizationCorrection(oldWeight))));
+						}
+					}
 				}
 				
 					
@@ -154,6 +213,10 @@ public class GradientDescentClassifier implements Classifier {
 				b += (eta*(getLossCorrection(label, 
 						distance, 1) - getRegularizationCorrection(b)));
 				
+				if( useFloats ){
+					b = (float)b;
+				}
+				
 			}
 		}
 	}
@@ -216,7 +279,7 @@ public class GradientDescentClassifier implements Classifier {
 	
 	@Override
 	public double confidence(Example example) {
-		return Math.abs(getDistanceFromHyperplane(example, weights, b));
+		return Math.abs(getDistanceFromHyperplane(example));
 	}
 
 		
@@ -227,7 +290,39 @@ public class GradientDescentClassifier implements Classifier {
 	 * @return
 	 */
 	protected double getPrediction(Example e){
-		return getPrediction(e, weights, b);
+		double sum = getDistanceFromHyperplane(e);
+		
+		if( sum > 0 ){
+			return 1.0;
+		}else if( sum < 0 ){
+			return -1.0;
+		}else{
+			return 0;
+		}
+	}
+	
+	/**
+	 * Get the distance of this example from the hyperplane of the current weights
+	 * 
+	 * @param e
+	 * @return the distance
+	 */
+	protected double getDistanceFromHyperplane(Example e){
+		if( !useFloats ){
+			return getDistanceFromHyperplane(e, weights, b);
+		}
+		
+		float sum = (float)b;
+		
+		for( int i = 0; i < e.getNumFeatures(); i++ ){
+			int featureIndex = e.getFeatureIndexAt(i);
+			
+			if( featureIndex >= 0 && featureIndex < hasWeight.length && hasWeight[featureIndex] ){
+				sum += floatWeights[featureIndex] * (float)e.getFeatureValueAt(i);
+			}
+		}
+		
+		return sum;
 	}
 	
 	/**
@@ -255,8 +350,13 @@ public class GradientDescentClassifier implements Classifier {
 		
 		//for(Integer featureIndex: w.keySet()){
 		// only need to iterate over non-zero features
-		for( Integer featureIndex: e.getFeatureSet()){
-			sum += w.get(featureIndex) * e.getFeature(featureIndex);
+		// (and skip any features there isn't a weight for)
+		for( int i = 0; i < e.getNumFeatures(); i++ ){
+			Double weight = w.get(e.getFeatureIndexAt(i));
+			
+			if( weight != null ){
+				sum += weight * e.getFeatureValueAt(i);
+			}
 		}
 		
 		return sum;
@@ -265,6 +365,16 @@ public class GradientDescentClassifier implements Classifier {
 	public String toString(){
 		StringBuffer buffer = new StringBuffer();
 		
+		if( useFloats ){
+			for( int index = 0; index < floatWeights.length; index++ ){
+				if( hasWeight[index] ){
+					buffer.append(index + ":" + floatWeights[index] + " ");
+				}
+			}
+			
+			return buffer.substring(0, buffer.length()-1);
+		}
+		
 		ArrayList<Integer> temp = new ArrayList<Integer>(weights.keySet());
 		Collections.sort(temp);
 		
@@ -0,0 +1,526 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import ml.data.DenseMatrix;
+import ml.data.Example;
+
+/**
+ * A hierarchical navigable small world graph over the rows of a DenseMatrix
+ * for finding (approximately) the nearest rows to a query.
+ * 
+ * Every row is a node on level 0 of the graph, and each level above has
+ * exponentially fewer of them.  A node is linked on each of its levels to a
+ * few nearby nodes, so a search walks greedily towards the query on the sparse
+ * top levels and then does a best-first search of width efSearch on level 0.
+ * Larger efSearch (and efConstruction when building) finds the true nearest
+ * rows more often but checks more rows.
+ * 
+ * The graph is built one row at a time on a single thread, and each row costs
+ * a search of width efConstruction plus pruning the links of its neighbors,
+ * so building takes tens of seconds per hundred thousand rows with the
+ * default parameters.  That's fine up to a few hundred thousand rows, but not
+ * millions, which would need the rows inserted in parallel.
+ * 
+ * Based on Malkov and Yashunin, "Efficient and robust approximate nearest
+ * neighbor search using Hierarchical Navigable Small World graphs".
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class HNSWIndex extends NeighborSearch {
+	// the levels are random, but the same every time the same data is indexed
+	private static final long SEED = 158;
+	
+	private DenseMatrix matrix;
+	private int numColumns;
+	private int m; // the number of links per node on the upper levels (2m on level 0)
+	private int efConstruction;
+	private int efSearch;
+	
+	private int entryPoint = -1;
+	private int topLevel = -1;
+	private int[] levels; // levels[row], the top level of each node
+	
+	// level0Links[row*2m ...] are the links of row on level 0, level0Counts[row] of them
+	private int[] level0Links;
+	private int[] level0Counts;
+	
+	// upperLinks[row][(level-1)*(m+1)] is the count of links of row on level
+	// (>= 1), followed by the links
+	private int[][] upperLinks;
+	
+	// a mark for each row that's been visited by the current search, per thread
+	private ThreadLocal<VisitedRows> visited = new ThreadLocal<VisitedRows>();
+	
+	/**
+	 * Build the graph
+	 * 
+	 * @param matrix the rows to index
+	 * @param m the number of links per node (on the upper levels)
+	 * @param efConstruction the width of the search for each node's links
+	 * @param efSearch the width of the search on level 0 (see setEfSearch)
+	 */
+	public HNSWIndex(DenseMatrix matrix, int m, int efConstruction, int efSearch){
+		if( m < 2 || efConstruction < 1 ){
+			throw new IllegalArgumentException("m must be at least 2 and efConstruction at least 1");
+		}
+		
+		this.matrix = matrix;
+		this.m = m;
+		this.efConstruction = Math.max(efConstruction, m);
+		setEfSearch(efSearch);
+		numColumns = matrix.getNumColumns();
+		
+		int numRows = matrix.getNumRows();
+		levels = new int[numRows];
+		level0Links = new int[Math.multiplyExact(numRows, 2*m)];
+		level0Counts = new int[numRows];
+		upperLinks = new int[numRows][];
+		
+		Random random = new Random(SEED);
+		double levelScale = 1 / Math.log(m);
+		
+		for( int row = 0; row < numRows; row++ ){
+			levels[row] = (int)(-Math.log(1 - random.nextDouble()) * levelScale);
+			
+			if( levels[row] > 0 ){
+				upperLinks[row] = new int[levels[row]*(m+1)];
+			}
+			
+			insert(row);
+		}
+	}
+	
+	/**
+	 * Set the width of the search on level 0 when searching for an example
+	 * (at least the number of neighbors is always used)
+	 * 
+	 * @param efSearch
+	 */
+	public void setEfSearch(int efSearch){
+		if( efSearch < 1 ){
+			throw new IllegalArgumentException("efSearch must be at least 1");
+		}
+		
+		this.efSearch = efSearch;
+	}
+	
+	@Override
+	public void search(Example example, NeighborHeap neighbors){
+		float[] floatQuery = matrix.usesFloats() ? matrix.toFloatVector(example) : null;
+		search(matrix.toVector(example), floatQuery, neighbors, Math.max(efSearch, neighbors.getK()));
+	}
+	
+	/**
+	 * Add the (approximately) k nearest rows to a query to neighbors
+	 * 
+	 * @param query the query's values in the matrix's column order
+	 * @param floatQuery the same values as floats if the matrix uses floats, otherwise null
+	 * @param neighbors where to keep the nearest rows by squared distance
+	 * @param efSearch the width of the search on level 0 (at least the size of neighbors)
+	 */
+	public void search(double[] query, float[] floatQuery, NeighborHeap neighbors, int efSearch){
+		if( entryPoint == -1 ){
+			return;
+		}
+		
+		int current = entryPoint;
+		double currentDistance = distance(current, query, floatQuery);
+		
+		for( int level = topLevel; level > 0; level-- ){
+			current = greedyClosest(current, currentDistance, query, floatQuery, level);
+			currentDistance = distance(current, query, floatQuery);
+		}
+		
+		NeighborHeap found = searchLevel(current, currentDistance, query, floatQuery, efSearch, 0);
+		
+		for( int i = 0; i < found.size(); i++ ){
+			neighbors.offer(found.getRow(i), found.getDistance(i));
+		}
+	}
+	
+	/**
+	 * Add a row to the graph
+	 * 
+	 * @param row
+	 */
+	private void insert(int row){
+		int level = levels[row];
+		
+		if( entryPoint == -1 ){
+			entryPoint = row;
+			topLevel = level;
+			return;
+		}
+		
+		double[] query = new double[numColumns];
+		float[] floatQuery = matrix.usesFloats() ? new float[numColumns] : null;
+		
+		for( int column = 0; column < numColumns; column++ ){
+			query[column] = matrix.get(row, column);
+			
+			if( floatQuery != null ){
+				floatQuery[column] = (float)query[column];
+			}
+		}
+		
+		// walk down to the top level of the new node
+		int current = entryPoint;
+		double currentDistance = distance(current, query, floatQuery);
+		
+		for( int l = topLevel; l > level; l-- ){
+			current = greedyClosest(current, currentDistance, query, floatQuery, l);
+			currentDistance = distance(current, query, floatQuery);
+		}
+		
+		// and link it on each level below that
+		for( int l = Math.min(level, topLevel); l >= 0; l-- ){
+			NeighborHeap found = searchLevel(current, currentDistance, query, floatQuery, efConstruction, l);
+			int[] selected = selectNeighbors(found, m);
+			
+			for( int neighbor: selected ){
+				addLink(row, neighbor, l);
+				addLink(neighbor, row, l);
+			}
+			
+			// start the next level from the closest one found
+			for( int i = 0; i < found.size(); i++ ){
+				if( found.getDistance(i) < currentDistance ){
+					current = found.getRow(i);
+					currentDistance = found.getDistance(i);
+				}
+			}
+		}
+		
+		if( level > topLevel ){
+			entryPoint = row;
+			topLevel = level;
+		}
+	}
+	
+	/**
+	 * Link from one node to another, dropping the least useful link if the
+	 * node has too many
+	 * 
+	 * @param from
+	 * @param to
+	 * @param level
+	 */
+	private void addLink(int from, int to, int level){
+		int maxLinks = level == 0 ? 2*m : m;
+		int[] links = level == 0 ? level0Links : upperLinks[from];
+		int base = level == 0 ? from*maxLinks : (level-1)*(m+1) + 1;
+		int count = getLinkCount(from, level);
+		
+		if( count < maxLinks ){
+			links[base + count] = to;
+			setLinkCount(from, level, count+1);
+			return;
+		}
+		
+		// too many, so choose again among the old links and the new one
+		NeighborHeap candidates = new NeighborHeap(maxLinks+1);
+		
+		for( int i = 0; i < count; i++ ){
+			candidates.offer(links[base + i], matrix.squaredDistance(from, links[base + i]));
+		}
+		
+		candidates.offer(to, matrix.squaredDistance(from, to));
+		
+		int[] selected = selectNeighbors(candidates, maxLinks);
+		System.arraycopy(selected, 0, links, base, selected.length);
+		setLinkCount(from, level, selected.length);
+	}
+	
+	/**
+	 * Choose up to max of the candidates to link to, skipping a candidate that's
+	 * closer to one already chosen than to the node, which keeps the links
+	 * spread out in different directions.  Any room left over is filled with
+	 * the closest of the skipped candidates.
+	 * 
+	 * @param candidates the candidates with their distances to the node
+	 * @param max the most to choose
+	 * @return the chosen rows
+	 */
+	private int[] selectNeighbors(NeighborHeap candidates, int max){
+		long[] sorted = sortByDistance(candidates);
+		int[] selected = new int[Math.min(max, sorted.length)];
+		boolean[] used = new boolean[sorted.length];
+		int numSelected = 0;
+		
+		for( int i = 0; i < sorted.length && numSelected < selected.length; i++ ){
+			int candidate = (int)sorted[i];
+			double candidateDistance = candidates.getDistance((int)(sorted[i] >>> 32));
+			boolean keep = true;
+			
+			for( int j = 0; j < numSelected && keep; j++ ){
+				keep = matrix.squaredDistance(candidate, selected[j]) >= candidateDistance;
+			}
+			
+			if( keep ){
+				selected[numSelected++] = candidate;
+				used[i] = true;
+			}
+		}
+		
+		for( int i = 0; i < sorted.length && numSelected < selected.length; i++ ){
+			if( !used[i] ){
+				selected[numSelected++] = (int)sorted[i];
+			}
+		}
+		
+		return selected;
+	}
+	
+	/**
+	 * Sort the rows in a heap by distance.  Each row's distance and position in
+	 * the heap are packed into one long that sorts the same way, so a plain
+	 * sort of primitives does it: the bits of a non-negative double sort the
+	 * same as the double, and the lowest few bits of the distance (far below
+	 * anything that matters for choosing links) are replaced by the position,
+	 * which breaks ties.
+	 * 
+	 * @param heap
+	 * @return for each row in order, (its position in heap << 32) | row
+	 */
+	private static long[] sortByDistance(NeighborHeap heap){
+		int size = heap.size();
+		long positionMask = (1L << (32 - Integer.numberOfLeadingZeros(size))) - 1;
+		long[] keys = new long[size];
+		
+		for( int i = 0; i < size; i++ ){
+			keys[i] = (Double.doubleToRawLongBits(heap.getDistance(i)) & ~positionMask) | i;
+		}
+		
+		Arrays.sort(keys);
+		
+		for( int i = 0; i < size; i++ ){
+			int position = (int)(keys[i] & positionMask);
+			keys[i] = ((long)position << 32) | heap.getRow(position);
+		}
+		
+		return keys;
+	}
+	
+	/**
+	 * Walk from a node to whichever linked node is closest to the query until
+	 * no linked node is closer
+	 * 
+	 * @param start
+	 * @param startDistance the distance of start to the query
+	 * @param query
+	 * @param floatQuery
+	 * @param level
+	 * @return the closest node found
+	 */
+	private int greedyClosest(int start, double startDistance, double[] query, float[] floatQuery, int level){
+		int current = start;
+		double currentDistance = startDistance;
+		boolean changed = true;
+		
+		while( changed ){
+			changed = false;
+			int[] links = level == 0 ? level0Links : upperLinks[current];
+			int base = level == 0 ? current*2*m : (level-1)*(m+1) + 1;
+			int count = getLinkCount(current, level);
+			
+			for( int i = 0; i < count; i++ ){
+				int neighbor = links[base + i];
+				double dist = distance(neighbor, query, floatQuery);
+				
+				if( dist < currentDistance ){
+					current = neighbor;
+					currentDistance = dist;
+					changed = true;
+				}
+			}
+		}
+		
+		return current;
+	}
+	
+	/**
+	 * Best-first search of one level of the graph, keeping the ef closest
+	 * nodes found and stopping when the closest unexpanded node is farther
+	 * than all of them
+	 * 
+	 * @param start
+	 * @param startDistance
+	 * @param query
+	 * @param floatQuery
+	 * @param ef the number of nodes to keep
+	 * @param level
+	 * @return the closest nodes found
+	 */
+	private NeighborHeap searchLevel(int start, double startDistance, double[] query, float[] floatQuery, int ef, int level){
+		VisitedRows visitedRows = visited.get();
+		
+		if( visitedRows == null || visitedRows.marks.length < levels.length ){
+			visitedRows = new VisitedRows(levels.length);
+			visited.set(visitedRows);
+		}
+		
+		int mark = visitedRows.nextMark();
+		int[] marks = visitedRows.marks;
+		
+		NeighborHeap found = new NeighborHeap(ef);
+		CandidateQueue candidates = new CandidateQueue();
+		found.offer(start, startDistance);
+		candidates.add(start, startDistance);
+		marks[start] = mark;
+		
+		while( candidates.size() > 0 ){
+			double closestDistance = candidates.peekDistance();
+			
+			if( closestDistance > found.worstDistance() ){
+				break;
+			}
+			
+			int current = candidates.poll();
+			int[] links = level == 0 ? level0Links : upperLinks[current];
+			int base = level == 0 ? current*2*m : (level-1)*(m+1) + 1;
+			int count = getLinkCount(current, level);
+			
+			for( int i = 0; i < count; i++ ){
+				int neighbor = links[base + i];
+				
+				if( marks[neighbor] != mark ){
+					marks[neighbor] = mark;
+					double dist = distance(neighbor, query, floatQuery);
+					
+					if( found.offer(neighbor, dist) ){
+						candidates.add(neighbor, dist);
+					}
+				}
+			}
+		}
+		
+		return found;
+	}
+	
+	private int getLinkCount(int row, int level){
+		return level == 0 ? level0Counts[row] : upperLinks[row][(level-1)*(m+1)];
+	}
+	
+	private void setLinkCount(int row, int level, int count){
+		if( level == 0 ){
+			level0Counts[row] = count;
+		}else{
+			upperLinks[row][(level-1)*(m+1)] = count;
+		}
+	}
+	
+	private double distance(int row, double[] query, float[] floatQuery){
+		return floatQuery != null ? matrix.squaredDistance(row, floatQuery) : matrix.squaredDistance(row, query);
+	}
+	
+	/**
+	 * The rows visited by a search.  Rather than clearing the marks for every
+	 * search, each search uses a new mark.
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private static class VisitedRows{
+		private int[] marks;
+		private int mark = 0;
+		
+		public VisitedRows(int numRows){
+			marks = new int[numRows];
+		}
+		
+		public int nextMark(){
+			mark++;
+			
+			if( mark == Integer.MAX_VALUE ){
+				Arrays.fill(marks, 0);
+				mark = 1;
+			}
+			
+			return mark;
+		}
+	}
+	
+	/**
+	 * A min-heap of rows by distance, for the nodes still to be expanded
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private static class CandidateQueue{
+		private int[] rows = new int[16];
+		private double[] distances = new double[16];
+		private int size = 0;
+		
+		public int size(){
+			return size;
+		}
+		
+		public double peekDistance(){
+			return distances[0];
+		}
+		
+		public void add(int row, double distance){
+			if( size == rows.length ){
+				rows = Arrays.copyOf(rows, size*2);
+				distances = Arrays.copyOf(distances, size*2);
+			}
+			
+			int child = size++;
+			
+			while( child > 0 ){
+				int parent = (child-1) >>> 1;
+				
+				if( distances[parent] <= distance ){
+					break;
+				}
+				
+				rows[child] = rows[parent];
+				distances[child] = distances[parent];
+				child = parent;
+			}
+			
+			rows[child] = row;
+			distances[child] = distance;
+		}
+		
+		public int poll(){
+			int top = rows[0];
+			size--;
+			
+			int row = rows[size];
+			double distance = distances[size];
+			int parent = 0;
+			
+			while( true ){
+				int child = 2*parent + 1;
+				
+				if( child >= size ){
+					break;
+				}
+				
+				if( child+1 < size && distances[child+1] < distances[child] ){
+					child++;
+				}
+				
+				if( distances[child] >= distance ){
+					break;
+				}
+				
+				rows[parent] = rows[child];
+				distances[parent] = distances[child];
+				parent = child;
+			}
+			
+			rows[parent] = row;
+			distances[parent] = distance;
+			
+			return top;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package ml.classifiers;
+
+import ml.data.QuantizedData;
+
+/**
+ * Finds the best threshold to split a set of rows on for a feature using the
+ * quantized data (see QuantizedData).  Rather than sorting the values, the rows
+ * are counted into a histogram of (bin, class id) and every threshold between
+ * two bins is scored from the running sums of the histogram, so finding a split
+ * is one pass over a column of bytes plus one pass over the bins.
+ * 
+ * The histogram of a set of rows is the sum of the histograms of any partition
+ * of it, so after a split only the smaller side needs to be counted and the
+ * other side is the parent minus the smaller side (see subtract).
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class HistogramSplitFinder {
+	private QuantizedData data;
+	private int numClasses;
+	
+	/**
+	 * @param data the quantized training data
+	 */
+	public HistogramSplitFinder(QuantizedData data){
+		this.data = data;
+		numClasses = data.getNumClasses();
+	}
+	
+	/**
+	 * Count the rows of each class in each bin of a feature
+	 * 
+	 * @param featureIndex
+	 * @param rows the rows to count
+	 * @param size the number of entries of rows in use
+	 * @return the counts, with (bin, class id) at bin*numClasses + classId
+	 */
+	public int[] histogram(int featureIndex, int[] rows, int size){
+		int[] histogram = new int[data.getNumBins(featureIndex)*numClasses];
+		byte[] column = data.getColumn(featureIndex);
+		int[] classIds = data.getClassIds();
+		
+		for( int i = 0; i < size; i++ ){
+			int row = rows[i];
+			histogram[(column[row] & 0xFF)*numClasses + classIds[row]]++;
+		}
+		
+		return histogram;
+	}
+	
+	/**
+	 * Get the histogram of the rows of parent that aren't in child, where
+	 * child's rows are a subset of parent's
+	 * 
+	 * @param parent
+	 * @param child
+	 * @return a new histogram of parent - child
+	 */
+	public static int[] subtract(int[] parent, int[] child){
+		int[] result = new int[parent.length];
+		
+		for( int i = 0; i < parent.length; i++ ){
+			result[i] = parent[i] - child[i];
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Find the threshold bin that best splits the rows counted in a histogram,
+	 * where rows in bins up to and including the threshold go left and the
+	 * rest go right.  A split is scored (like DecisionTreeClassifier) by the
+	 * training error of predicting the majority label on each side.  Ties go
+	 * to the lower threshold.
+	 * 
+	 * @param featureIndex
+	 * @param histogram the histogram of the rows (see histogram)
+	 * @param size the number of rows counted in histogram
+	 * @return the best split, or null if the feature has only one bin
+	 */
+	public Split findBestSplit(int featureIndex, int[] histogram, int size){
+		int numBins = histogram.length / numClasses;
+		int[] total = new int[numClasses];
+		
+		for( int i = 0; i < histogram.length; i++ ){
+			total[i % numClasses] += histogram[i];
+		}
+		
+		int[] left = new int[numClasses];
+		Split best = null;
+		
+		for( int bin = 0; bin < numBins-1; bin++ ){
+			int leftCount = 0;
+			int rightCount = 0;
+			
+			for( int classId = 0; classId < numClasses; classId++ ){
+				left[classId] += histogram[bin*numClasses + classId];
+				leftCount = Math.max(leftCount, left[classId]);
+				rightCount = Math.max(rightCount, total[classId] - left[classId]);
+			}
+			
+			double error = 1 - (leftCount+rightCount)/(double)size;
+			
+			if( best == null || error < best.error ){
+				best = new Split(featureIndex, bin, data.getUpperBound(featureIndex, bin), error);
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * A threshold split of a feature
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	public static class Split{
+		public int featureIndex;
+		public int bin; // the last bin that goes left
+		public double threshold; // values <= threshold go left
+		public double error; // the training error of the split
+		
+		public Split(int featureIndex, int bin, double threshold, double error){
+			this.featureIndex = featureIndex;
+			this.bin = bin;
+			this.threshold = threshold;
+			this.error = error;
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ml.data.DataSet;
+import ml.data.Example;
+
+/**
+ * An inverted index over sparse examples (e.g. bag of words text): for each
+ * feature, the rows that have it and their values.  The squared distance
+ * between a query and a row is |q|^2 + |r|^2 - 2 q.r, and the dot product is
+ * only non-zero for rows that share a feature with the query, so only the
+ * postings of the query's features are walked, and the cost of a search
+ * depends on how many examples share its words rather than on the size of the
+ * vocabulary.
+ * 
+ * Rows that share no features with the query are at distance |q|^2 + |r|^2,
+ * so the closest of them are the ones with the smallest norms, which are
+ * kept in increasing order so only as many as can make it into the neighbors
+ * are looked at.
+ * 
+ * The expansion can lose most of its precision to rounding (e.g. when a
+ * large value is shared by most of the rows), so it's only used to rule rows
+ * out: a row is skipped if its distance by the expansion is farther than the
+ * kth nearest found so far by more than the rounding could account for, and
+ * every other row has its distance computed the same way as checking every
+ * row (see BruteForceSearch.getSquaredDistance).  The neighbors found are
+ * therefore the same as checking every row.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class InvertedIndex extends NeighborSearch {
+	private DataSet data;
+	private List<Example> examples;
+	private int numRows;
+	private double[] rowNorms; // rowNorms[row], the squared norm of the row
+	private int[] rowsByNorm; // the rows in increasing order of norm
+	private int maxRowFeatures; // the most features of any row
+	
+	// the postings of feature f are positions postingStarts[f] to postingStarts[f+1]-1
+	// of postingRows and postingValues, in increasing order of row
+	private int[] postingStarts;
+	private int[] postingRows;
+	private double[] postingValues;
+	
+	// the dot products of the current search, per thread
+	private ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>();
+	
+	/**
+	 * Index the features of a data set's examples.  Only the features the data
+	 * set has (see DataSet.hasFeature) are indexed, as for the other distances.
+	 * 
+	 * @param data
+	 */
+	public InvertedIndex(DataSet data){
+		this.data = data;
+		examples = data.getData();
+		numRows = examples.size();
+		rowNorms = new double[numRows];
+		int maxFeature = -1;
+		int numPostings = 0;
+		
+		for( Example e: examples ){
+			for( int i = 0; i < e.getNumFeatures(); i++ ){
+				if( data.hasFeature(e.getFeatureIndexAt(i)) ){
+					maxFeature = Math.max(maxFeature, e.getFeatureIndexAt(i));
+					numPostings++;
+				}
+			}
+		}
+		
+		// count the postings of each feature, then fill them in row order
+		postingStarts = new int[maxFeature + 2];
+		postingRows = new int[numPostings];
+		postingValues = new double[numPostings];
+		
+		for( Example e: examples ){
+			for( int i = 0; i < e.getNumFeatures(); i++ ){
+				if( data.hasFeature(e.getFeatureIndexAt(i)) ){
+					postingStarts[e.getFeatureIndexAt(i) + 1]++;
+				}
+			}
+		}
+		
+		for( int f = 0; f <= maxFeature; f++ ){
+			postingStarts[f+1] += postingStarts[f];
+		}
+		
+		int[] next = Arrays.copyOf(postingStarts, maxFeature + 1);
+		
+		for( int row = 0; row < numRows; row++ ){
+			Example e = examples.get(row);
+			maxRowFeatures = Math.max(maxRowFeatures, e.getNumFeatures());
+			
+			for( int i = 0; i < e.getNumFeatures(); i++ ){
+				int f = e.getFeatureIndexAt(i);
+				
+				if( data.hasFeature(f) ){
+					double value = e.getFeatureValueAt(i);
+					postingRows[next[f]] = row;
+					postingValues[next[f]++] = value;
+					rowNorms[row] += value*value;
+				}
+			}
+		}
+		
+		// sort a copy of the norms, then put each row (in row order, so ties
+		// stay in row order) at the next free place for its norm
+		double[] sortedNorms = rowNorms.clone();
+		Arrays.sort(sortedNorms);
+		
+		rowsByNorm = new int[numRows];
+		int[] numPlaced = new int[numRows];
+		
+		for( int row = 0; row < numRows; row++ ){
+			int first = firstAtLeast(sortedNorms, rowNorms[row]);
+			rowsByNorm[first + numPlaced[first]++] = row;
+		}
+	}
+	
+	/**
+	 * Find the first position of a sorted array whose value isn't less than key
+	 * 
+	 * @param sorted values in increasing order (see Arrays.sort)
+	 * @param key
+	 * @return the position
+	 */
+	private static int firstAtLeast(double[] sorted, double key){
+		int low = 0;
+		int high = sorted.length;
+		
+		while( low < high ){
+			int middle = (low + high) >>> 1;
+			
+			if( Double.compare(sorted[middle], key) < 0 ){
+				low = middle + 1;
+			}else{
+				high = middle;
+			}
+		}
+		
+		return low;
+	}
+	
+	/**
+	 * Offer the rows to neighbors that could be among the nearest to an example
+	 * 
+	 * @param example
+	 * @param neighbors
+	 */
+	@Override
+	public void search(Example example, NeighborHeap neighbors){
+		Scratch s = scratch.get();
+		
+		if( s == null ){
+			s = new Scratch(numRows);
+			scratch.set(s);
+		}
+		
+		// accumulate the dot products with the rows that share a feature
+		double queryNorm = 0.0;
+		int numTouched = 0;
+		
+		for( int i = 0; i < example.getNumFeatures(); i++ ){
+			int f = example.getFeatureIndexAt(i);
+			
+			if( !data.hasFeature(f) ){
+				continue;
+			}
+			
+			double value = example.getFeatureValueAt(i);
+			queryNorm += value*value;
+			
+			// a feature none of the rows have
+			if( f >= postingStarts.length - 1 ){
+				continue;
+			}
+			
+			for( int p = postingStarts[f]; p < postingStarts[f+1]; p++ ){
+				int row = postingRows[p];
+				
+				if( !s.touched[row] ){
+					s.touched[row] = true;
+					s.rows[numTouched++] = row;
+				}
+				
+				s.dots[row] += value*postingValues[p];
+			}
+		}
+		
+		// each sum of n products (and the direct distance) is off by at most
+		// about n rounding errors of the norms, padded generously since being
+		// too loose only costs a few more direct distances
+		double slack = 4*(example.getNumFeatures() + maxRowFeatures + 8)*Math.ulp(1.0);
+		
+		for( int i = 0; i < numTouched; i++ ){
+			int row = s.rows[i];
+			double norms = queryNorm + rowNorms[row];
+			offer(example, row, (norms - 2*s.dots[row] - slack*norms)*(1 - slack), neighbors);
+		}
+		
+		// the rest are at |q|^2 + |r|^2, so stop at the first that can't get in
+		for( int row: rowsByNorm ){
+			double bound = (queryNorm + rowNorms[row])*(1 - slack)*(1 - slack);
+			
+			if( neighbors.isFull() && bound > neighbors.worstDistance() ){
+				break;
+			}
+			
+			if( !s.touched[row] ){
+				offer(example, row, bound, neighbors);
+			}
+		}
+		
+		for( int i = 0; i < numTouched; i++ ){
+			s.touched[s.rows[i]] = false;
+			s.dots[s.rows[i]] = 0.0;
+		}
+	}
+	
+	/**
+	 * Offer a row to neighbors, with its distance computed directly, unless
+	 * a lower bound on its distance rules it out
+	 * 
+	 * @param example
+	 * @param row
+	 * @param bound no more than the row's distance
+	 * @param neighbors
+	 */
+	private void offer(Example example, int row, double bound, NeighborHeap neighbors){
+		// the rows aren't offered in increasing order, so a row at exactly the
+		// farthest distance kept could still get in on a tie
+		if( bound <= neighbors.worstDistance() ){
+			neighbors.offer(row, BruteForceSearch.getSquaredDistance(data, example, examples.get(row)));
+		}
+	}
+	
+	/**
+	 * The dot products of a search and which rows they've been accumulated for,
+	 * reset after each search by only clearing the rows touched
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private static class Scratch{
+		private double[] dots;
+		private boolean[] touched;
+		private int[] rows;
+		
+		public Scratch(int numRows){
+			dots = new double[numRows];
+			touched = new boolean[numRows];
+			rows = new int[numRows];
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+
+import ml.data.DenseMatrix;
+
+/**
+ * A k-d tree over the rows of a DenseMatrix.  Each internal node splits its
+ * rows at the median of the column they're most spread out on, and a search
+ * only crosses to the far side of a split if the query is closer to the split
+ * than to the kth nearest row found so far.  This works well when there are
+ * only a few columns; with many, almost every split has to be crossed (see
+ * BallTree).
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class KDTree extends SpatialIndex {
+	private int[] splitColumns;
+	private double[] splitValues; // rows with at most this value go left, at least go right
+	
+	/**
+	 * Build the tree
+	 * 
+	 * @param matrix the rows to index
+	 */
+	public KDTree(DenseMatrix matrix){
+		super(matrix);
+		splitColumns = new int[starts.length];
+		splitValues = new double[starts.length];
+		
+		if( order.length > 0 ){
+			build(0, order.length);
+		}
+	}
+	
+	/**
+	 * Build the subtree for some rows
+	 * 
+	 * @param start
+	 * @param end
+	 * @return the node
+	 */
+	private int build(int start, int end){
+		int node = addNode(start, end);
+		
+		if( end - start <= LEAF_SIZE ){
+			return node;
+		}
+		
+		int column = widestColumn(start, end);
+		
+		// all of the rows are the same
+		if( column == -1 ){
+			return node;
+		}
+		
+		int middle = partition(start, end, column);
+		splitColumns[node] = column;
+		splitValues[node] = matrix.get(order[middle], column);
+		
+		int left = build(start, middle);
+		int right = build(middle, end);
+		lefts[node] = left;
+		rights[node] = right;
+		
+		return node;
+	}
+	
+	@Override
+	protected void grow(int capacity){
+		splitColumns = Arrays.copyOf(splitColumns, capacity);
+		splitValues = Arrays.copyOf(splitValues, capacity);
+	}
+	
+	@Override
+	public void search(double[] query, float[] floatQuery, NeighborHeap neighbors){
+		if( numNodes > 0 ){
+			search(0, query, floatQuery, neighbors);
+		}
+	}
+	
+	private void search(int node, double[] query, float[] floatQuery, NeighborHeap neighbors){
+		if( lefts[node] == -1 ){
+			scanLeaf(node, query, floatQuery, neighbors);
+			return;
+		}
+		
+		// search the side of the split the query is on first
+		double diff = query[splitColumns[node]] - splitValues[node];
+		int near = diff < 0 ? lefts[node] : rights[node];
+		int far = diff < 0 ? rights[node] : lefts[node];
+		
+		search(near, query, floatQuery, neighbors);
+		
+		// every row on the far side is at least diff away in the split column
+		if( !canPrune(diff*diff, floatQuery, neighbors) ){
+			search(far, query, floatQuery, neighbors);
+		}
+	}
+}
@@ -1,12 +1,10 @@
 package ml.classifiers;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.PriorityQueue;
+import java.util.List;
 
 import ml.data.DataSet;
+import ml.data.DenseMatrix;
 import ml.data.Example;
-import ml.utils.HashMapCounter;
 
 /**
  * KNN Classifier
@@ -18,18 +16,128 @@ import ml.utils.HashMapCounter;
  *
  */
 public class KNNClassifier implements Classifier {
-	private DataSet train;
+	// how the nearest neighbors are found (see setSearchMode)
+	public static final int BRUTE_FORCE = 0;
+	public static final int KD_TREE = 1;
+	public static final int BALL_TREE = 2;
+	public static final int AUTO_SEARCH = 3;
+	public static final int HNSW = 4;
+	public static final int LSH = 5;
+	public static final int HAMMING = 6;
+	public static final int INVERTED_INDEX = 7;
+	
+	// AUTO_SEARCH uses a k-d tree up to this many features and a ball tree above,
+	// unless a few sample searches show that the tree doesn't skip enough of the
+	// data to pay for itself (e.g. binary features or data with no structure)
+	private static final int KD_TREE_MAX_FEATURES = 16;
+	private static final int AUTO_SAMPLE_SEARCHES = 16;
+	private static final double AUTO_MAX_FRACTION_CHECKED = 0.5;
+	
+	// early abandoning adds up the features in a slower loop than checking
+	// every feature, so it's only used if the same sample searches show that it
+	// skips at least this much of the work (see setEarlyAbandon)
+	private static final double EARLY_ABANDON_MIN_FRACTION_SKIPPED = 0.75;
+	
 	private int k = 5;
+	private int searchMode = AUTO_SEARCH;
+	
+	// the labels of the training examples encoded as class ids (see DataSet.getClassLabels)
+	private int[] classIds;
+	private double[] classLabels;
+	
+	// how the nearest training rows are found, picked when the classifier is trained
+	private NeighborSearch search;
+	
+	// store dense data as floats (see setUseFloats)
+	private boolean useFloats = false;
+	
+	// for a brute force search of dense data, stop adding up a row's distance
+	// once it can't be a neighbor, if that pays off (see setEarlyAbandon)
+	private boolean earlyAbandon = true;
+	
+	// for the approximate HNSW search (see setHNSWParameters)
+	private int hnswM = 16;
+	private int efConstruction = 200;
+	private int efSearch = 50;
+	
+	// for the approximate LSH search (see setLSHParameters)
+	private int lshTables = 10;
+	private int lshBits = 12;
 	
 	@Override
 	public void train(DataSet data) {
-		train = data;
-		// done!
+		classIds = data.getClassIdColumn();
+		classLabels = data.getClassLabels();
+		search = createSearch(data);
+	}
+	
+	/**
+	 * Pick how the nearest neighbors are found for the search mode (see
+	 * setSearchMode) and build it
+	 * 
+	 * @param data the training data
+	 * @return the search of the training data
+	 */
+	private NeighborSearch createSearch(DataSet data){
+		DenseMatrix matrix = data.isDense() ? data.getDenseMatrix(useFloats) : null;
+		
+		// LSH works on the examples, so it doesn't need the data to be dense
+		if( searchMode == LSH ){
+			return new LSHIndex(data, lshTables, lshBits, new BruteForceSearch(data, matrix));
+		}
+		
+		// for sparse data, only look at the examples that share a feature
+		if( matrix == null ){
+			return searchMode == AUTO_SEARCH || searchMode == INVERTED_INDEX ?
+					new InvertedIndex(data) : new BruteForceSearch(data, null);
+		}
+		
+		// for 0/1 data, comparing packed bits is faster than any of the trees
+		if( (searchMode == AUTO_SEARCH || searchMode == HAMMING) && BinaryMatrix.isBinary(matrix) ){
+			return new BinaryMatrix(matrix, new BruteForceSearch(data, matrix));
+		}
+		
+		if( searchMode == HNSW ){
+			return new HNSWIndex(matrix, hnswM, efConstruction, efSearch);
+		}
+		
+		// index the rows of dense data so not every row has to be checked
+		SpatialIndex index = null;
+		
+		if( searchMode == KD_TREE || (searchMode == AUTO_SEARCH && matrix.getNumColumns() <= KD_TREE_MAX_FEATURES) ){
+			index = new KDTree(matrix);
+		}else if( searchMode == BALL_TREE || searchMode == AUTO_SEARCH ){
+			index = new BallTree(matrix);
+		}
+		
+		if( index != null && (searchMode != AUTO_SEARCH ||
+			index.sampleFractionChecked(AUTO_SAMPLE_SEARCHES, k) <= AUTO_MAX_FRACTION_CHECKED) ){
+			return index;
+		}
+		
+		return bruteForce(data, matrix);
+	}
+	
+	/**
+	 * @param data the training data
+	 * @param matrix the training data's rows
+	 * @return a search that checks every row, with early abandoning if it's on
+	 * and a few sample searches show that it skips enough of the features
+	 */
+	private NeighborSearch bruteForce(DataSet data, DenseMatrix matrix){
+		if( earlyAbandon ){
+			PartialDistanceScan scan = new PartialDistanceScan(matrix);
+			
+			if( scan.sampleFractionOfColumnsSkipped(AUTO_SAMPLE_SEARCHES, k) >= EARLY_ABANDON_MIN_FRACTION_SKIPPED ){
+				return scan;
+			}
+		}
+		
+		return new BruteForceSearch(data, matrix);
 	}
 
 	@Override
 	public double classify(Example example) {
-		//PriorityQueue<Double> q = new PriorityQueue<Double>(k);
 		return getLabel(example)[0];
 	}
 	
@@ -38,67 +146,255 @@ public class KNNClassifier implements Classifier {
 		return getLabel(example)[0];
 	}
 	
-	private double[] getLabel(Example example){
-		ArrayList<ScoredExample> distances = new ArrayList<ScoredExample>();
+	/**
+	 * Classify a list of examples.  The examples are searched for together
+	 * (see NeighborSearch.search), which for a brute force search of dense
+	 * data without early abandoning (see setEarlyAbandon) compares them
+	 * against the training data in blocks on the common ForkJoinPool (see
+	 * BatchNeighborSearch).  That finds the same neighbors as classifying them
+	 * one at a time but reads the training data far fewer times.  Otherwise the
+	 * examples are classified one at a time.
+	 * 
+	 * @param examples
+	 * @return the predicted label of each example
+	 */
+	public double[] classifyAll(List<Example> examples){
+		NeighborHeap[] neighbors = findNeighbors(examples);
+		double[] labels = new double[neighbors.length];
 		
-		for( Example e: train.getData() ){
-			distances.add(new ScoredExample(e, getDistance(example, e)));
+		for( int i = 0; i < neighbors.length; i++ ){
+			labels[i] = getLabel(neighbors[i])[0];
 		}
 		
-		Collections.sort(distances);
-		
-		HashMapCounter<Double> counter = new HashMapCounter<Double>();
+		return labels;
+	}
+	
+	private double[] getLabel(Example example){
+		return getLabel(findNeighbors(example));
+	}
+	
+	/**
+	 * @param neighbors the nearest training rows to an example
+	 * @return the majority label of the neighbors and the fraction of them with that label
+	 */
+	private double[] getLabel(NeighborHeap neighbors){
+		int[] counts = new int[classLabels.length];
 		
-		for( int i = 0; i < k; i++ ){
-			counter.increment(distances.get(i).e.getLabel());
+		for( int i = 0; i < neighbors.size(); i++ ){
+			counts[classIds[neighbors.getRow(i)]]++;
 		}
 		
-		double maxCount = -1;
-		double maxPrediction = 0.0;
+		// ties go to the smaller label
+		int maxClass = 0;
 		
-		for( Double d: counter.keySet() ){
-			int count = counter.get(d);
-			
-			if( count > maxCount ){
-				maxCount = count;
-				maxPrediction = d;
+		for( int classId = 1; classId < counts.length; classId++ ){
+			if( counts[classId] > counts[maxClass] ){
+				maxClass = classId;
 			}
 		}
 		
 		double[] temp = new double[2];
-		temp[0] = maxPrediction;
-		temp[1] = maxCount/(double)k;
+		temp[0] = classLabels[maxClass];
+		temp[1] = counts[maxClass]/(double)k;
 		return temp;
 	}
 	
-	private double getDistance(Example e1, Example e2){
-		double dist = 0.0;
+	/**
+	 * Get the k nearest training examples to an example, closest first
+	 * (approximately the nearest in HNSW mode)
+	 * 
+	 * @param example
+	 * @return the positions of the neighbors in the training data
+	 */
+	public int[] getNeighbors(Example example){
+		return findNeighbors(example).removeAllClosestFirst();
+	}
+	
+	/**
+	 * Get the k nearest training examples to each of a list of examples (see
+	 * classifyAll)
+	 * 
+	 * @param examples
+	 * @return the positions of each example's neighbors in the training data, closest first
+	 */
+	public int[][] getNeighbors(List<Example> examples){
+		NeighborHeap[] neighbors = findNeighbors(examples);
+		int[][] rows = new int[neighbors.length][];
 		
-		for( Integer featureNum: train.getAllFeatureIndices() ){
-			double diff = e1.getFeature(featureNum) - e2.getFeature(featureNum);
-			dist += diff*diff;
+		for( int i = 0; i < neighbors.length; i++ ){
+			rows[i] = neighbors[i].removeAllClosestFirst();
 		}
 		
-		return Math.sqrt(dist);
+		return rows;
+	}
+	
+	/**
+	 * @param examples
+	 * @return the k nearest training rows to each example
+	 */
+	private NeighborHeap[] findNeighbors(List<Example> examples){
+		return search.search(examples, k);
+	}
+	
+	/**
+	 * @param example
+	 * @return the k nearest training rows to the example
+	 */
+	private NeighborHeap findNeighbors(Example example){
+		// keep the k closest rows as we go rather than sorting all of them.  The
+		// squared distances order the rows the same as the distances.
+		NeighborHeap neighbors = new NeighborHeap(k);
+		search.search(example, neighbors);
+		return neighbors;
 	}
 	
 	public void setK(int k){
 		this.k = k;
 	}
-
-	private class ScoredExample implements Comparable<ScoredExample>{
-		public double distance;
-		public Example e;
+	
+	/**
+	 * Set how the nearest neighbors are found: BRUTE_FORCE checks every
+	 * training example, KD_TREE and BALL_TREE build an index of the training
+	 * data (see KDTree and BallTree) that lets most of it be skipped, and
+	 * AUTO_SEARCH (the default) picks a k-d tree for few features and a ball
+	 * tree for more, falling back to brute force if the tree wouldn't skip
+	 * much.  The neighbors found are the same either way.  HNSW instead builds
+	 * a graph of the training data (see HNSWIndex and setHNSWParameters) that
+	 * finds most, but not always all, of the nearest neighbors while checking
+	 * far fewer examples.  HAMMING packs data whose values are all 0 or 1 into
+	 * bits (see BinaryMatrix) and compares them 64 features at a time, which
+	 * finds the same neighbors as brute force; AUTO_SEARCH also uses it for
+	 * such data.  INVERTED_INDEX indexes sparse data (such as text) by feature
+	 * (see InvertedIndex) so only the examples that share a feature with the
+	 * example being classified are compared feature by feature, which also
+	 * finds the same neighbors as brute force; AUTO_SEARCH uses it for data
+	 * that isn't dense.  LSH hashes the training data (see LSHIndex and
+	 * setLSHParameters) and only checks the examples that hash the same as the
+	 * example being classified, which also works for sparse data such as text.
+	 * Other than LSH and INVERTED_INDEX, only dense data (see DataSet.isDense)
+	 * is indexed.  Takes effect the next time the classifier is trained.
+	 * 
+	 * @param searchMode
+	 */
+	public void setSearchMode(int searchMode){
+		if( searchMode < BRUTE_FORCE || searchMode > INVERTED_INDEX ){
+			throw new IllegalArgumentException("Unknown search mode: " + searchMode);
+		}
 		
-		public ScoredExample(Example e, double distance){
-			this.e = e;
-			this.distance = distance;
+		this.searchMode = searchMode;
+	}
+	
+	/**
+	 * Set the parameters of the graph for the HNSW search mode
+	 * 
+	 * @param m the number of links per example in the graph (more is slower to
+	 * build and search but finds the nearest neighbors more often)
+	 * @param efConstruction how wide a search is used to find the links of each
+	 * example when building the graph (the build time grows with it, see HNSWIndex)
+	 * @param efSearch how wide a search is used to find the neighbors when classifying
+	 * (the higher, the more likely the true nearest neighbors are found)
+	 */
+	public void setHNSWParameters(int m, int efConstruction, int efSearch){
+		if( m < 2 || efConstruction < 1 || efSearch < 1 ){
+			throw new IllegalArgumentException("m must be at least 2 and efConstruction and efSearch at least 1");
 		}
-
-		@Override
-		public int compareTo(ScoredExample o) {
-			// we want smallest first (i.e. closest distances)
-			return Double.compare(distance, o.distance);
+		
+		hnswM = m;
+		this.efConstruction = efConstruction;
+		this.efSearch = efSearch;
+	}
+	
+	/**
+	 * Set how wide a search is used to find the neighbors in the HNSW search mode.
+	 * Unlike the other parameters, this takes effect immediately, so it can be
+	 * tuned without retraining.
+	 * 
+	 * @param efSearch
+	 */
+	public void setEfSearch(int efSearch){
+		if( efSearch < 1 ){
+			throw new IllegalArgumentException("efSearch must be at least 1");
 		}
+		
+		this.efSearch = efSearch;
+		
+		if( search instanceof HNSWIndex ){
+			((HNSWIndex)search).setEfSearch(efSearch);
+		}
+	}
+	
+	/**
+	 * Set the parameters of the hash tables for the LSH search mode.  The
+	 * examples in the same bucket of any table are checked, so more tables
+	 * finds more of the nearest neighbors and more bits per table checks fewer
+	 * examples.  Takes effect the next time the classifier is trained.
+	 * 
+	 * @param numTables the number of hash tables
+	 * @param numBits the number of bits per hash (at most 32)
+	 */
+	public void setLSHParameters(int numTables, int numBits){
+		if( numTables < 1 || numBits < 1 || numBits > LSHIndex.MAX_BITS ){
+			throw new IllegalArgumentException("Need at least one table and between 1 and " + LSHIndex.MAX_BITS + " bits");
+		}
+		
+		lshTables = numTables;
+		lshBits = numBits;
+	}
+	
+	/**
+	 * Set whether a brute force search of dense data stops adding up an
+	 * example's distance as soon as it's farther than the kth nearest found so
+	 * far, adding up the features with the most variance first (see
+	 * PartialDistanceScan).  The neighbors found are the same either way.  On
+	 * by default.  The early abandoning search doesn't use SIMD instructions
+	 * (see VectorKernels), so each feature it adds up costs more, and it's
+	 * only faster when examples are given up on after few of their features.
+	 * So even when it's on, it's only used if a few sample searches of the
+	 * training data skip most of the features; otherwise every feature of
+	 * every example is compared.  Takes effect the next time the classifier
+	 * is trained.
+	 * 
+	 * @param earlyAbandon
+	 */
+	public void setEarlyAbandon(boolean earlyAbandon){
+		this.earlyAbandon = earlyAbandon;
+	}
+	
+	/**
+	 * @return the number of training examples given up on by early abandoning
+	 * (see setEarlyAbandon) since the classifier was trained
+	 */
+	public long getRowsAbandoned(){
+		return search instanceof PartialDistanceScan ? ((PartialDistanceScan)search).getRowsAbandoned() : 0;
+	}
+	
+	/**
+	 * @return the number of training examples checked by the early abandoning
+	 * search (see setEarlyAbandon) since the classifier was trained
+	 */
+	public long getRowsChecked(){
+		return search instanceof PartialDistanceScan ? ((PartialDistanceScan)search).getRowsChecked() : 0;
+	}
+	
+	/**
+	 * @return the fraction of the feature comparisons skipped by early
+	 * abandoning (see setEarlyAbandon) since the classifier was trained
+	 */
+	public double getFractionOfFeaturesSkipped(){
+		return search instanceof PartialDistanceScan ? ((PartialDistanceScan)search).getFractionOfColumnsSkipped() : 0.0;
+	}
+	
+	/**
+	 * Store the training data (if it's dense) as floats rather than doubles
+	 * and compute the distances in floats.  This halves the memory that has to
+	 * be scanned for each example but the distances are less precise.  The
+	 * examples themselves stay doubles (see DataSet.getDenseMatrix), so only
+	 * the copy KNN searches gets smaller.  Takes effect the next time the
+	 * classifier is trained.
+	 * 
+	 * @param useFloats
+	 */
+	public void setUseFloats(boolean useFloats){
+		this.useFloats = useFloats;
 	}
 }
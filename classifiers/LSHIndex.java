@@ -0,0 +1,250 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ml.data.DataSet;
+import ml.data.Example;
+
+/**
+ * A locality-sensitive hashing index for finding candidate nearest neighbors
+ * of sparse examples (e.g. bag of words text) using random hyperplanes
+ * (SimHash).  Each bit of an example's hash is which side of a random
+ * hyperplane through the origin the example is on, so two examples get the
+ * same bit with probability 1 - (angle between them)/pi.  Examples with a
+ * small angle between them (a high cosine similarity) are then likely to have
+ * the same hash in at least one of several tables.
+ * 
+ * More bits per table makes the buckets smaller (fewer candidates to check but
+ * more near neighbors missed), and more tables finds more near neighbors at the
+ * cost of more candidates.
+ * 
+ * The hyperplanes are never stored: the component of a hyperplane for a
+ * feature is +1 or -1 depending on a bit of a hash of the feature index and
+ * the table, so there's no cost for a large vocabulary.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class LSHIndex extends NeighborSearch {
+	public static final int MAX_BITS = 32;
+	
+	private DataSet data;
+	private BruteForceSearch candidateSearch; // for the distances of the candidates
+	private int numTables;
+	private int numBits;
+	
+	// for each table, (hash << 32) | row for every row in increasing order, so
+	// the rows of a bucket are together
+	private long[][] buckets;
+	
+	/**
+	 * Hash every example of a data set
+	 * 
+	 * @param data
+	 * @param numTables the number of hash tables
+	 * @param numBits the number of bits (hyperplanes) per table, at most MAX_BITS
+	 * @param candidateSearch a search of the same data, used to check the
+	 * candidates that share a bucket with an example
+	 */
+	public LSHIndex(DataSet data, int numTables, int numBits, BruteForceSearch candidateSearch){
+		if( numTables < 1 || numBits < 1 || numBits > MAX_BITS ){
+			throw new IllegalArgumentException("Need at least one table and between 1 and " + MAX_BITS + " bits");
+		}
+		
+		this.data = data;
+		this.candidateSearch = candidateSearch;
+		this.numTables = numTables;
+		this.numBits = numBits;
+		
+		List<Example> examples = data.getData();
+		int numRows = examples.size();
+		buckets = new long[numTables][numRows];
+		
+		for( int row = 0; row < numRows; row++ ){
+			int[] hashes = hash(examples.get(row));
+			
+			for( int table = 0; table < numTables; table++ ){
+				buckets[table][row] = ((long)hashes[table] << 32) | row;
+			}
+		}
+		
+		for( int table = 0; table < numTables; table++ ){
+			Arrays.sort(buckets[table]);
+		}
+	}
+	
+	/**
+	 * Only check the examples that share a bucket with this one (at least as
+	 * many as neighbors keeps, see getCandidates)
+	 */
+	@Override
+	public void search(Example example, NeighborHeap neighbors){
+		candidateSearch.search(example, getCandidates(example, neighbors.getK()), neighbors);
+	}
+	
+	/**
+	 * Get the rows that share a bucket with an example in any table.  If that's
+	 * fewer than minCandidates, the buckets one bit away are also included.
+	 * 
+	 * @param example
+	 * @param minCandidates
+	 * @return the candidate rows, in increasing order
+	 */
+	public int[] getCandidates(Example example, int minCandidates){
+		int[] hashes = hash(example);
+		RowList candidates = new RowList();
+		
+		for( int table = 0; table < numTables; table++ ){
+			addBucket(table, hashes[table], candidates);
+		}
+		
+		candidates.sortUnique();
+		
+		// multi-probe: try the buckets that differ in one bit
+		if( candidates.size < minCandidates ){
+			for( int table = 0; table < numTables; table++ ){
+				for( int bit = 0; bit < numBits; bit++ ){
+					addBucket(table, hashes[table] ^ (1 << bit), candidates);
+				}
+			}
+			
+			candidates.sortUnique();
+		}
+		
+		return Arrays.copyOf(candidates.rows, candidates.size);
+	}
+	
+	/**
+	 * Add the rows of a bucket to the candidates
+	 * 
+	 * @param table
+	 * @param hash the hash of the bucket
+	 * @param candidates
+	 */
+	private void addBucket(int table, int hash, RowList candidates){
+		long[] tableBuckets = buckets[table];
+		long first = (long)hash << 32;
+		int pos = lowerBound(tableBuckets, first);
+		
+		while( pos < tableBuckets.length && (tableBuckets[pos] >>> 32) == (first >>> 32) ){
+			candidates.add((int)tableBuckets[pos++]);
+		}
+	}
+	
+	/**
+	 * @param sorted
+	 * @param key
+	 * @return the first position whose value is at least key
+	 */
+	private static int lowerBound(long[] sorted, long key){
+		int low = 0;
+		int high = sorted.length;
+		
+		while( low < high ){
+			int middle = (low + high) >>> 1;
+			
+			if( sorted[middle] < key ){
+				low = middle + 1;
+			}else{
+				high = middle;
+			}
+		}
+		
+		return low;
+	}
+	
+	/**
+	 * Hash an example in every table
+	 * 
+	 * @param example
+	 * @return the hash for each table
+	 */
+	private int[] hash(Example example){
+		int[] hashes = new int[numTables];
+		double[] sums = new double[numBits];
+		
+		for( int table = 0; table < numTables; table++ ){
+			Arrays.fill(sums, 0.0);
+			
+			for( int i = 0; i < example.getNumFeatures(); i++ ){
+				int featureIndex = example.getFeatureIndexAt(i);
+				
+				if( !data.hasFeature(featureIndex) ){
+					continue;
+				}
+				
+				double value = example.getFeatureValueAt(i);
+				long signs = mix(((long)table << 32) ^ (featureIndex & 0xFFFFFFFFL));
+				
+				for( int bit = 0; bit < numBits; bit++ ){
+					sums[bit] += ((signs >>> bit) & 1) == 0 ? value : -value;
+				}
+			}
+			
+			int hash = 0;
+			
+			for( int bit = 0; bit < numBits; bit++ ){
+				if( sums[bit] > 0 ){
+					hash |= 1 << bit;
+				}
+			}
+			
+			hashes[table] = hash;
+		}
+		
+		return hashes;
+	}
+	
+	/**
+	 * Scramble the bits of x (the finalizer of SplitMix64), so each bit of the
+	 * result is a coin flip for each x
+	 * 
+	 * @param x
+	 * @return the mixed bits
+	 */
+	private static long mix(long x){
+		x += 0x9E3779B97F4A7C15L;
+		x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+		return x ^ (x >>> 31);
+	}
+	
+	/**
+	 * A growable list of rows
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private static class RowList{
+		private int[] rows = new int[16];
+		private int size = 0;
+		
+		public void add(int row){
+			if( size == rows.length ){
+				rows = Arrays.copyOf(rows, size*2);
+			}
+			
+			rows[size++] = row;
+		}
+		
+		/**
+		 * Sort the rows and remove duplicates
+		 */
+		public void sortUnique(){
+			Arrays.sort(rows, 0, size);
+			int numUnique = 0;
+			
+			for( int i = 0; i < size; i++ ){
+				if( numUnique == 0 || rows[i] != rows[numUnique-1] ){
+					rows[numUnique++] = rows[i];
+				}
+			}
+			
+			size = numUnique;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package ml.classifiers;
+
+/**
+ * Keeps the k closest rows offered to it, as a max-heap on distance stored in
+ * two primitive arrays, so finding the k nearest of n rows is O(n log k) with
+ * nothing allocated per row.  The root is the farthest of the rows kept, which
+ * is all a new row has to beat to get in.
+ * 
+ * Rows at the same distance are ordered by row, so offering the rows in
+ * increasing order keeps the same neighbors as a stable sort by distance would.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class NeighborHeap {
+	private int k;
+	private int size = 0;
+	private int[] rows;
+	private double[] distances;
+	
+	/**
+	 * @param k the number of rows to keep
+	 */
+	public NeighborHeap(int k){
+		this.k = k;
+		rows = new int[k];
+		distances = new double[k];
+	}
+	
+	/**
+	 * Forget all of the rows kept so far, so the heap can be reused for another query
+	 */
+	public void clear(){
+		size = 0;
+	}
+	
+	/**
+	 * Keep a row if it's among the k closest offered so far
+	 * 
+	 * @param row
+	 * @param distance the distance (or anything that orders the same way, e.g. the squared distance)
+	 * @return whether or not the row was kept
+	 */
+	public boolean offer(int row, double distance){
+		if( size < k ){
+			// add at the bottom and sift up
+			int child = size++;
+			
+			while( child > 0 ){
+				int parent = (child-1) >>> 1;
+				
+				if( !farther(distance, row, distances[parent], rows[parent]) ){
+					break;
+				}
+				
+				rows[child] = rows[parent];
+				distances[child] = distances[parent];
+				child = parent;
+			}
+			
+			rows[child] = row;
+			distances[child] = distance;
+			return true;
+		}else if( k > 0 && farther(distances[0], rows[0], distance, row) ){
+			// replace the farthest
+			siftDown(row, distance);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return the number of rows the heap keeps
+	 */
+	public int getK(){
+		return k;
+	}
+	
+	/**
+	 * @return the number of rows kept (at most k)
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**
+	 * @return whether or not k rows have been kept
+	 */
+	public boolean isFull(){
+		return size == k;
+	}
+	
+	/**
+	 * Get the distance a row has to be closer than to be kept, which is
+	 * infinite until the heap is full
+	 * 
+	 * @return the distance of the farthest row kept
+	 */
+	public double worstDistance(){
+		return size < k ? Double.POSITIVE_INFINITY : distances[0];
+	}
+	
+	/**
+	 * Get one of the rows kept.  The rows are in heap order, not by distance.
+	 * 
+	 * @param i between 0 and size()-1
+	 * @return the row
+	 */
+	public int getRow(int i){
+		return rows[i];
+	}
+	
+	/**
+	 * @param i between 0 and size()-1
+	 * @return the distance of getRow(i)
+	 */
+	public double getDistance(int i){
+		return distances[i];
+	}
+	
+	/**
+	 * Empty the heap, closest row first
+	 * 
+	 * @return the rows that were kept, in order of increasing distance
+	 */
+	public int[] removeAllClosestFirst(){
+		int[] sorted = new int[size];
+		
+		// the root is the farthest, so fill from the back
+		while( size > 0 ){
+			sorted[size-1] = rows[0];
+			size--;
+			
+			siftDown(rows[size], distances[size]);
+		}
+		
+		return sorted;
+	}
+	
+	/**
+	 * Put a row at the root and move it down to where it belongs
+	 * 
+	 * @param row
+	 * @param distance
+	 */
+	private void siftDown(int row, double distance){
+		int parent = 0;
+		
+		while( true ){
+			int child = 2*parent + 1;
+			
+			if( child >= size ){
+				break;
+			}
+			
+			if( child+1 < size && farther(distances[child+1], rows[child+1], distances[child], rows[child]) ){
+				child++;
+			}
+			
+			if( !farther(distances[child], rows[child], distance, row) ){
+				break;
+			}
+			
+			rows[parent] = rows[child];
+			distances[parent] = distances[child];
+			parent = child;
+		}
+		
+		rows[parent] = row;
+		distances[parent] = distance;
+	}
+	
+	/**
+	 * @return whether (distance1, row1) comes after (distance2, row2)
+	 */
+	private static boolean farther(double distance1, int row1, double distance2, int row2){
+		return distance1 > distance2 || (distance1 == distance2 && row1 > row2);
+	}
+}
@@ -0,0 +1,49 @@
+package ml.classifiers;
+
+import java.util.List;
+
+import ml.data.Example;
+
+/**
+ * A way of finding the nearest training rows to an example for
+ * KNNClassifier, which builds one of these when it's trained (see
+ * KNNClassifier.setSearchMode): BruteForceSearch and PartialDistanceScan
+ * check every row, KDTree and BallTree (see SpatialIndex), BinaryMatrix and
+ * InvertedIndex skip rows that can't be among the nearest, and HNSWIndex and
+ * LSHIndex find most, but not always all, of the nearest rows.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+abstract class NeighborSearch {
+	/**
+	 * Add the nearest rows to an example to neighbors (along with any rows
+	 * already in it)
+	 * 
+	 * @param example
+	 * @param neighbors where to keep the nearest rows by squared distance
+	 */
+	public abstract void search(Example example, NeighborHeap neighbors);
+	
+	/**
+	 * Find the k nearest rows to each of a list of examples.  By default the
+	 * examples are searched for one at a time.
+	 * 
+	 * @param examples
+	 * @param k
+	 * @return the nearest rows of each example, in the same order as examples
+	 */
+	public NeighborHeap[] search(List<Example> examples, int k){
+		NeighborHeap[] neighbors = new NeighborHeap[examples.size()];
+		
+		for( int i = 0; i < neighbors.length; i++ ){
+			neighbors[i] = new NeighborHeap(k);
+			search(examples.get(i), neighbors[i]);
+		}
+		
+		return neighbors;
+	}
+}
@@ -0,0 +1,251 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+
+import ml.data.DenseMatrix;
+import ml.data.Example;
+
+/**
+ * Checks every row of a DenseMatrix for the nearest neighbors, but stops
+ * adding up a row's squared distance as soon as it's larger than the distance
+ * of the kth nearest row found so far (checked every four columns), since
+ * the row can't get in.  The columns are added up in decreasing order of
+ * variance, which are the ones that usually contribute the most to a
+ * distance, so a far row is given up on after as few columns as possible.
+ * The neighbors found are the same as adding up every column.
+ * 
+ * The columns are added up with a plain loop rather than VectorKernels: on
+ * data where the scan pays off, most rows are given up on after a handful of
+ * columns, and handing the kernels blocks that short was slower than the
+ * loop, even with the columns copied into variance order so the blocks were
+ * contiguous.
+ * 
+ * Counts of the rows and columns checked are kept, so the work saved can be
+ * reported (see getFractionOfColumnsSkipped), or estimated before deciding
+ * whether to use the scan at all (see sampleFractionOfColumnsSkipped).
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class PartialDistanceScan extends NeighborSearch {
+	private DenseMatrix matrix;
+	private int numRows;
+	private int numColumns;
+	private int[] columnOrder; // the columns in decreasing order of variance
+	
+	private long rowsChecked = 0;
+	private long rowsAbandoned = 0;
+	private long columnsChecked = 0;
+	
+	/**
+	 * @param matrix the rows to search
+	 */
+	public PartialDistanceScan(DenseMatrix matrix){
+		this.matrix = matrix;
+		numRows = matrix.getNumRows();
+		numColumns = matrix.getNumColumns();
+		double[] variances = new double[numColumns];
+		
+		for( int column = 0; column < numColumns; column++ ){
+			double sum = 0.0;
+			double sumOfSquares = 0.0;
+			
+			for( int row = 0; row < numRows; row++ ){
+				double value = matrix.get(row, column);
+				sum += value;
+				sumOfSquares += value*value;
+			}
+			
+			double mean = numRows > 0 ? sum/numRows : 0.0;
+			variances[column] = numRows > 0 ? sumOfSquares/numRows - mean*mean : 0.0;
+		}
+		
+		// sort (variance, column) packed into longs, as in HNSWIndex.sortByDistance:
+		// the bits of a non-negative double sort the same as the double, and
+		// the lowest few are replaced by the column, counted down so that when
+		// the order is read backwards ties stay in increasing order of column
+		long columnMask = (1L << (32 - Integer.numberOfLeadingZeros(numColumns))) - 1;
+		long[] keys = new long[numColumns];
+		
+		for( int column = 0; column < numColumns; column++ ){
+			long bits = Double.doubleToRawLongBits(Math.max(variances[column], 0.0));
+			keys[column] = (bits & ~columnMask) | (numColumns - 1 - column);
+		}
+		
+		Arrays.sort(keys);
+		columnOrder = new int[numColumns];
+		
+		for( int i = 0; i < numColumns; i++ ){
+			columnOrder[i] = numColumns - 1 - (int)(keys[numColumns - 1 - i] & columnMask);
+		}
+	}
+	
+	/**
+	 * Offer every row that could be among the nearest to an example to
+	 * neighbors, in increasing order.  In float mode, the float values are
+	 * subtracted and added up in doubles.
+	 */
+	@Override
+	public void search(Example example, NeighborHeap neighbors){
+		double[] query = new double[numColumns];
+		
+		if( matrix.usesFloats() ){
+			float[] floatQuery = matrix.toFloatVector(example);
+			
+			for( int column = 0; column < numColumns; column++ ){
+				query[column] = floatQuery[column];
+			}
+		}else{
+			query = matrix.toVector(example);
+		}
+		
+		search(query, neighbors);
+	}
+	
+	/**
+	 * Offer every row that could be among the nearest to a query to neighbors
+	 * 
+	 * @param query the query's values in the matrix's column order
+	 * @param neighbors
+	 */
+	private void search(double[] query, NeighborHeap neighbors){
+		double[] values = matrix.getValues();
+		float[] floatValues = matrix.getFloatValues();
+		
+		for( int row = 0; row < numRows; row++ ){
+			double worst = neighbors.worstDistance();
+			int base = row*numColumns;
+			double dist = 0.0;
+			int i = 0;
+			
+			// a row already farther than the farthest kept can't get in.  The
+			// bound is only checked every four columns to keep the loop tight.
+			while( i + 4 <= numColumns && dist <= worst ){
+				double diff0 = query[columnOrder[i]] - get(values, floatValues, base + columnOrder[i]);
+				double diff1 = query[columnOrder[i+1]] - get(values, floatValues, base + columnOrder[i+1]);
+				double diff2 = query[columnOrder[i+2]] - get(values, floatValues, base + columnOrder[i+2]);
+				double diff3 = query[columnOrder[i+3]] - get(values, floatValues, base + columnOrder[i+3]);
+				dist += diff0*diff0 + diff1*diff1 + diff2*diff2 + diff3*diff3;
+				i += 4;
+			}
+			
+			while( i < numColumns && dist <= worst ){
+				double diff = query[columnOrder[i]] - get(values, floatValues, base + columnOrder[i]);
+				dist += diff*diff;
+				i++;
+			}
+			
+			count(i, dist > worst);
+			
+			if( dist <= worst ){
+				neighbors.offer(row, dist);
+			}
+		}
+	}
+	
+	/**
+	 * Estimate what fraction of the columns a search skips by searching for
+	 * the neighbors of some of the rows themselves (as in
+	 * SpatialIndex.sampleFractionChecked).  Nearly every row is usually given
+	 * up on at some point, so it's the columns skipped, not the rows abandoned,
+	 * that show whether the scan saves any work.  The sample searches aren't
+	 * counted in getRowsChecked and the others.
+	 * 
+	 * @param numQueries the number of rows to search for
+	 * @param k the number of neighbors to search for
+	 * @return the fraction of the columns of the rows checked that didn't have to be added up
+	 */
+	public double sampleFractionOfColumnsSkipped(int numQueries, int k){
+		numQueries = Math.min(numQueries, numRows);
+		
+		if( numQueries == 0 ){
+			return 0.0;
+		}
+		
+		long checkedBefore = rowsChecked;
+		long abandonedBefore = rowsAbandoned;
+		long columnsBefore = columnsChecked;
+		NeighborHeap neighbors = new NeighborHeap(k);
+		double[] query = new double[numColumns];
+		
+		for( int q = 0; q < numQueries; q++ ){
+			int row = (int)((long)q*numRows/numQueries);
+			
+			for( int column = 0; column < numColumns; column++ ){
+				query[column] = matrix.get(row, column);
+			}
+			
+			neighbors.clear();
+			search(query, neighbors);
+		}
+		
+		double fraction = getFractionOfColumnsSkipped(rowsChecked - checkedBefore, columnsChecked - columnsBefore);
+		rowsChecked = checkedBefore;
+		rowsAbandoned = abandonedBefore;
+		columnsChecked = columnsBefore;
+		return fraction;
+	}
+	
+	/**
+	 * Get a value of the matrix, whichever way it's stored (the arrays are
+	 * passed in, rather than checked in a field each time, so the check can
+	 * be taken out of the loop)
+	 * 
+	 * @param values the matrix's doubles, or null in float mode
+	 * @param floatValues the matrix's floats, or null if not in float mode
+	 * @param position
+	 * @return the value
+	 */
+	private static double get(double[] values, float[] floatValues, int position){
+		return floatValues != null ? floatValues[position] : values[position];
+	}
+	
+	/**
+	 * Count a row that was checked
+	 * 
+	 * @param numChecked the number of its columns that were added up
+	 * @param abandoned whether or not it was given up on
+	 */
+	private void count(int numChecked, boolean abandoned){
+		rowsChecked++;
+		columnsChecked += numChecked;
+		
+		if( abandoned ){
+			rowsAbandoned++;
+		}
+	}
+	
+	/**
+	 * @return the number of rows checked by all of the searches so far
+	 */
+	public long getRowsChecked(){
+		return rowsChecked;
+	}
+	
+	/**
+	 * @return the number of rows given up on before all of their columns were added up
+	 */
+	public long getRowsAbandoned(){
+		return rowsAbandoned;
+	}
+	
+	/**
+	 * @return the fraction of the columns of the rows checked that didn't have to be added up
+	 */
+	public double getFractionOfColumnsSkipped(){
+		return getFractionOfColumnsSkipped(rowsChecked, columnsChecked);
+	}
+	
+	/**
+	 * @param numRowsChecked
+	 * @param numColumnsChecked the number of columns of those rows that were added up
+	 * @return the fraction of the columns of the rows that didn't have to be added up
+	 */
+	private double getFractionOfColumnsSkipped(long numRowsChecked, long numColumnsChecked){
+		return numRowsChecked == 0 || numColumns == 0 ? 0.0 :
+			1.0 - numColumnsChecked/((double)numRowsChecked*numColumns);
+	}
+}
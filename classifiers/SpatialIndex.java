@@ -0,0 +1,290 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+
+import ml.data.DenseMatrix;
+import ml.data.Example;
+
+/**
+ * A binary tree over the rows of a DenseMatrix for finding the nearest rows
+ * to a query without comparing against all of them (see KDTree and BallTree).
+ * The rows are reordered so that the rows of every node are contiguous, and
+ * the nodes are stored in parallel arrays with node 0 as the root.
+ * 
+ * The search is exact: a node is only skipped if a lower bound on the
+ * distance of its rows is more than the distance of the kth closest row found
+ * so far, so the same rows are found as when checking every row.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+abstract class SpatialIndex extends NeighborSearch {
+	// nodes with at most this many rows aren't split
+	protected static final int LEAF_SIZE = 16;
+	
+	// the bounds and the distances are rounded differently, so a bound has to be
+	// beaten by a bit more than the kth distance before pruning (a lot more in
+	// float mode, where the distances are calculated in floats)
+	private static final double SLACK = 1e-9;
+	private static final double FLOAT_SLACK = 1e-3;
+	
+	protected DenseMatrix matrix;
+	protected int numColumns;
+	protected int[] order; // the rows, reordered so each node's rows are together
+	
+	// the nodes of the tree
+	protected int numNodes = 0;
+	protected int[] starts; // the node's rows are order[starts[node]] to order[ends[node]-1]
+	protected int[] ends;
+	protected int[] lefts; // -1 for leaves
+	protected int[] rights;
+	
+	// the number of rows whose distance has been checked by searches
+	protected long rowsChecked = 0;
+	
+	protected SpatialIndex(DenseMatrix matrix){
+		this.matrix = matrix;
+		numColumns = matrix.getNumColumns();
+		order = new int[matrix.getNumRows()];
+		
+		for( int row = 0; row < order.length; row++ ){
+			order[row] = row;
+		}
+		
+		int capacity = 16;
+		starts = new int[capacity];
+		ends = new int[capacity];
+		lefts = new int[capacity];
+		rights = new int[capacity];
+	}
+	
+	@Override
+	public void search(Example example, NeighborHeap neighbors){
+		if( matrix.usesFloats() ){
+			// the bounds are in doubles, but of the values as they're stored
+			float[] floatQuery = matrix.toFloatVector(example);
+			double[] query = new double[floatQuery.length];
+			
+			for( int column = 0; column < query.length; column++ ){
+				query[column] = floatQuery[column];
+			}
+			
+			search(query, floatQuery, neighbors);
+		}else{
+			search(matrix.toVector(example), null, neighbors);
+		}
+	}
+	
+	/**
+	 * Add the k nearest rows to a query to neighbors (along with any rows
+	 * already in it)
+	 * 
+	 * @param query the query's values in the matrix's column order
+	 * @param floatQuery the same values as floats if the matrix uses floats (query
+	 * should then hold these values), otherwise null
+	 * @param neighbors where to keep the nearest rows by squared distance
+	 */
+	public abstract void search(double[] query, float[] floatQuery, NeighborHeap neighbors);
+	
+	/**
+	 * Estimate what fraction of the rows a search has to check by searching
+	 * for the neighbors of some of the indexed rows themselves
+	 * 
+	 * @param numQueries the number of rows to search for
+	 * @param k the number of neighbors to search for
+	 * @return the average fraction of the rows checked per search
+	 */
+	public double sampleFractionChecked(int numQueries, int k){
+		int numRows = order.length;
+		numQueries = Math.min(numQueries, numRows);
+		
+		if( numQueries == 0 ){
+			return 0.0;
+		}
+		
+		long before = rowsChecked;
+		NeighborHeap neighbors = new NeighborHeap(k);
+		double[] query = new double[numColumns];
+		float[] floatQuery = matrix.usesFloats() ? new float[numColumns] : null;
+		
+		for( int q = 0; q < numQueries; q++ ){
+			int row = (int)((long)q*numRows/numQueries);
+			
+			for( int column = 0; column < numColumns; column++ ){
+				query[column] = matrix.get(row, column);
+				
+				if( floatQuery != null ){
+					floatQuery[column] = (float)query[column];
+				}
+			}
+			
+			neighbors.clear();
+			search(query, floatQuery, neighbors);
+		}
+		
+		return (rowsChecked - before)/((double)numQueries*numRows);
+	}
+	
+	/**
+	 * @return the number of rows whose distance has been checked by searches
+	 */
+	public long getRowsChecked(){
+		return rowsChecked;
+	}
+	
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	public int getNumNodes(){
+		return numNodes;
+	}
+	
+	/**
+	 * Add a node for some rows, without any children yet
+	 * 
+	 * @param start the position in order of the first row
+	 * @param end one past the position of the last row
+	 * @return the new node
+	 */
+	protected int addNode(int start, int end){
+		if( numNodes == starts.length ){
+			int capacity = starts.length*2;
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			lefts = Arrays.copyOf(lefts, capacity);
+			rights = Arrays.copyOf(rights, capacity);
+			grow(capacity);
+		}
+		
+		starts[numNodes] = start;
+		ends[numNodes] = end;
+		lefts[numNodes] = -1;
+		rights[numNodes] = -1;
+		return numNodes++;
+	}
+	
+	/**
+	 * Make room for more nodes in any arrays a subclass keeps per node
+	 * 
+	 * @param capacity the new number of nodes there should be room for
+	 */
+	protected abstract void grow(int capacity);
+	
+	/**
+	 * Find the column whose values are the most spread out over some rows
+	 * 
+	 * @param start
+	 * @param end
+	 * @return the column, or -1 if the rows are all the same
+	 */
+	protected int widestColumn(int start, int end){
+		int widest = -1;
+		double widestSpread = 0.0;
+		
+		for( int column = 0; column < numColumns; column++ ){
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			
+			for( int i = start; i < end; i++ ){
+				double value = matrix.get(order[i], column);
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+			
+			if( max - min > widestSpread ){
+				widestSpread = max - min;
+				widest = column;
+			}
+		}
+		
+		return widest;
+	}
+	
+	/**
+	 * Reorder some rows around their median value for a column (quickselect)
+	 * so that every row before the middle has a value no bigger than the middle
+	 * row's, and every row after has a value no smaller
+	 * 
+	 * @param start
+	 * @param end
+	 * @param column
+	 * @return the middle position
+	 */
+	protected int partition(int start, int end, int column){
+		int middle = (start + end) >>> 1;
+		int low = start;
+		int high = end-1;
+		
+		while( low < high ){
+			double pivot = matrix.get(order[(low + high) >>> 1], column);
+			int i = low;
+			int j = high;
+			
+			while( i <= j ){
+				while( matrix.get(order[i], column) < pivot ){
+					i++;
+				}
+				
+				while( matrix.get(order[j], column) > pivot ){
+					j--;
+				}
+				
+				if( i <= j ){
+					int temp = order[i];
+					order[i] = order[j];
+					order[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			
+			if( middle <= j ){
+				high = j;
+			}else if( middle >= i ){
+				low = i;
+			}else{
+				break;
+			}
+		}
+		
+		return middle;
+	}
+	
+	/**
+	 * Check the distance of every row of a leaf
+	 * 
+	 * @param node
+	 * @param query
+	 * @param floatQuery
+	 * @param neighbors
+	 */
+	protected void scanLeaf(int node, double[] query, float[] floatQuery, NeighborHeap neighbors){
+		rowsChecked += ends[node] - starts[node];
+		
+		for( int i = starts[node]; i < ends[node]; i++ ){
+			int row = order[i];
+			
+			if( floatQuery != null ){
+				neighbors.offer(row, matrix.squaredDistance(row, floatQuery));
+			}else{
+				neighbors.offer(row, matrix.squaredDistance(row, query));
+			}
+		}
+	}
+	
+	/**
+	 * @param bound a lower bound on the squared distance of some rows
+	 * @param floatQuery
+	 * @param neighbors
+	 * @return whether or not none of the rows can be one of the nearest
+	 */
+	protected boolean canPrune(double bound, float[] floatQuery, NeighborHeap neighbors){
+		double worst = neighbors.worstDistance() * (1 + (floatQuery != null ? FLOAT_SLACK : SLACK));
+		
+		// a row at exactly the worst distance could still get in on a tie
+		return bound > worst;
+	}
+}
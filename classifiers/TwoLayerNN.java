@@ -1,11 +1,14 @@
 package ml.classifiers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 import ml.data.DataSet;
 import ml.data.Example;
+import ml.data.VectorKernels;
 
 /**
  * Class that implements the Two Layer Neural network,
@@ -22,12 +25,18 @@ public class TwoLayerNN implements Classifier {
 	private int numHidden;
 	private double eta = 0.1;
 	private int iterations = 200;
+	private boolean useFloats = false;
 	
 	//Instance variables hidden from outside
 	private DataSet theData;
 	private double[][] inputWeights;
+	private int[] inputFeatures; // the feature index for each input weight (the last weight is the bias)
 	private double[] innerWeights;
 	
+	//The same weights stored as floats, used instead of the above in float mode
+	private float[][] floatInputWeights;
+	private float[] floatInnerWeights;
+	
 	/**
 	 * Constructor for two-layer neural network
 	 * @param numHidden - number of nodes in hidden layer
@@ -45,20 +54,23 @@ public class TwoLayerNN implements Classifier {
 	public void train(DataSet data) {
 		//Initialize weights and bias
 		setupForTraining(data);
-		ArrayList<Example> examples = theData.getData();
+		//Streaming data is read from disk each iteration instead of kept in memory, otherwise
+		//copy the list (but not the examples) so that shuffling doesn't reorder the data set
+		Iterable<Example> examples = theData.isStreaming() ? theData : new ArrayList<Example>(theData.getData());
 		for (int i=0; i<iterations; i++){
 			trainIteration(examples);
 		}
 	}
 	
 	/**
-	 * Sets up the initial weights of network, and adds a bias to the data
+	 * Sets up the initial weights of network.  The bias isn't added to the data;
+	 * instead the last input weight of each hidden node is treated as the weight
+	 * of a feature that's always 1.0.
 	 * 
 	 * @param data - the data to train on
 	 */
 	private void setupForTraining(DataSet data){
-		//Add bias to dataset
-		theData = data.getCopyWithBias();
+		theData = data;
 		//Initialize weights
 		initializeWeights();
 	}
@@ -66,9 +78,9 @@ public class TwoLayerNN implements Classifier {
 	/**
 	 * Does a single training iteration, as specified by lecture and homework notes.
 	 * 
-	 * @param examples - the examples to train on
+	 * @param examples - the examples to train on (shuffled first if they're in memory)
 	 */
-	private void trainIteration(ArrayList<Example> examples){
+	private void trainIteration(Iterable<Example> examples){
 		//Initialize local variables
 		double[] innerOutputs;
 		double[] innerDerivatives;
@@ -79,7 +91,9 @@ public class TwoLayerNN implements Classifier {
 		double[] innerWeightUpdates;
 		double[][] inputWeightUpdates;
 		
-		Collections.shuffle(examples);
+		if (examples instanceof List){
+			Collections.shuffle((List<Example>) examples);
+		}
 		for (Example ex : examples){
 			//Calculate outputs (and save activation derivatives), going forward
 			innerActivations = calculateInnerActivations(ex);
@@ -93,11 +107,20 @@ public class TwoLayerNN implements Classifier {
 			innerWeightUpdates = calculateInnerWeightUpdates(innerOutputs,outputDerivative,output,ex.getLabel());
 			
 			//Calculate new weights for hidden layer
-			inputWeightUpdates = calculateInputWeightUpdates(ex,innerDerivatives,outputDerivative,output);
+			inputWeightUpdates = useFloats ? null : calculateInputWeightUpdates(ex,innerDerivatives,outputDerivative,output);
 			
 			//Update model with new weights
-			innerWeights = innerWeightUpdates.clone();
-			inputWeights = inputWeightUpdates.clone();
+			if (useFloats){
+				//The input weights are updated in place, but only after the
+				//inner weights have been used for them
+				updateFloatInputWeights(ex,innerDerivatives,outputDerivative,output);
+				for (int j=0; j<floatInnerWeights.length; j++){
+					floatInnerWeights[j] = (float)innerWeightUpdates[j];
+				}
+			}else{
+				innerWeights = innerWeightUpdates.clone();
+				inputWeights = inputWeightUpdates.clone();
+			}
 		}
 		
 	}
@@ -133,7 +156,6 @@ public class TwoLayerNN implements Classifier {
 	 * @return classification or confidence, depending on classify flag
 	 */
 	private double classifyOrConfidence(Example example, boolean classify){
-		example = theData.addBiasFeature(example);
 		double[] innerOutputs = calculateInnerOutputs(calculateInnerActivations(example));
 		double output = Math.tanh(calculateOutputActivation(innerOutputs));
 		if (classify){
@@ -162,15 +184,52 @@ public class TwoLayerNN implements Classifier {
 		iterations = its;
 	}
 	
+	/**
+	 * Sets whether the weights should be stored (and the hidden layer
+	 * calculated) as floats rather than doubles.  This halves the memory
+	 * for the weights at the cost of some precision.  Takes effect the next
+	 * time the network is trained.
+	 * 
+	 * @param useFloats - whether to use floats
+	 */
+	public void setUseFloats(boolean useFloats){
+		this.useFloats = useFloats;
+	}
+	
 	/**
 	 * Initializes the weights in the neural network to have random
 	 * weights between -1 and 1.
 	 */
 	private void initializeWeights(){
-		//Initialize input weights
-		inputWeights = new double[numHidden][theData.getAllFeatureIndices().size()];
+		//Initialize input weights (one per feature plus the bias), with the features
+		//in order so that feature indices don't need to be contiguous
+		inputFeatures = new int[theData.getAllFeatureIndices().size()];
+		int position = 0;
+		for (int f : theData.getAllFeatureIndices()){
+			inputFeatures[position++] = f;
+		}
+		Arrays.sort(inputFeatures);
+		int numInputs = inputFeatures.length+1;
+		if (useFloats){
+			inputWeights = null;
+			innerWeights = null;
+			floatInputWeights = new float[numHidden][numInputs];
+			for (int j=0; j<numHidden; j++){
+				for (int k=0; k<numInputs; k++){
+					floatInputWeights[j][k] = (float)ThreadLocalRandom.current().nextDouble(-1.0, 1.0);
+				}
+			}
+			floatInnerWeights = new float[numHidden+1];
+			for (int i=0; i<floatInnerWeights.length; i++){
+				floatInnerWeights[i] = (float)ThreadLocalRandom.current().nextDouble(-1.0, 1.0);
+			}
+			return;
+		}
+		floatInputWeights = null;
+		floatInnerWeights = null;
+		inputWeights = new double[numHidden][numInputs];
 		for (int j=0; j<numHidden; j++){
-			for (int k=0; k<theData.getAllFeatureIndices().size(); k++){
+			for (int k=0; k<numInputs; k++){
 				inputWeights[j][k] = ThreadLocalRandom.current().nextDouble(-1.0, 1.0);
 			}
 		}
@@ -188,23 +247,77 @@ public class TwoLayerNN implements Classifier {
 	 * @return a list with the inputs the the activation functions of all hidden nodes
 	 */
 	private double[] calculateInnerActivations(Example ex){
+		if (useFloats){
+			return calculateFloatInnerActivations(ex);
+		}
 		double activationInput;
 		double[] weightList;
 		double[] toReturn = new double[numHidden];
+		double[] features = getFeatureValues(ex);
 		//For each set of weigths associated with each node
 		for (int i = 0; i<inputWeights.length; i++){
-			activationInput = 0;
 			weightList = inputWeights[i];
 			//calculate dot product of weights * feature values
-			for (int j=0; j<weightList.length; j++){
-				activationInput += weightList[j]*ex.getFeature(j);
-			}
+			activationInput = VectorKernels.get().dot(weightList, 0, features, 0, features.length);
+			//the bias is always 1.0
+			activationInput += weightList[weightList.length-1];
 			//calculate activation function output
 			toReturn[i] = activationInput;
 		}
 		return toReturn;
 	}
 	
+	/**
+	 * Same as calculateInnerActivations, but with the float weights (and sums)
+	 * 
+	 * @param ex - the example to calculate output for
+	 * @return a list with the inputs the the activation functions of all hidden nodes
+	 */
+	private double[] calculateFloatInnerActivations(Example ex){
+		float activationInput;
+		float[] weightList;
+		double[] toReturn = new double[numHidden];
+		float[] features = getFloatFeatureValues(ex);
+		for (int i = 0; i<floatInputWeights.length; i++){
+			weightList = floatInputWeights[i];
+			activationInput = VectorKernels.get().dot(weightList, 0, features, 0, features.length);
+			//the bias is always 1.0
+			activationInput += weightList[weightList.length-1];
+			toReturn[i] = activationInput;
+		}
+		return toReturn;
+	}
+	
+	/**
+	 * Looks up the values of an example's features in the same order as the
+	 * input weights, so that the weights of every node can be multiplied with them
+	 * as arrays (see VectorKernels).
+	 * 
+	 * @param ex - the example
+	 * @return the value of each input feature
+	 */
+	private double[] getFeatureValues(Example ex){
+		double[] features = new double[inputFeatures.length];
+		for (int j=0; j<features.length; j++){
+			features[j] = ex.getFeature(inputFeatures[j]);
+		}
+		return features;
+	}
+	
+	/**
+	 * Same as getFeatureValues, but as floats
+	 * 
+	 * @param ex - the example
+	 * @return the value of each input feature
+	 */
+	private float[] getFloatFeatureValues(Example ex){
+		float[] features = new float[inputFeatures.length];
+		for (int j=0; j<features.length; j++){
+			features[j] = (float)ex.getFeature(inputFeatures[j]);
+		}
+		return features;
+	}
+	
 	/**
 	 * Calculates the outputs of the activation functions of the nodes in the hidden layer
 	 * 
@@ -245,6 +358,13 @@ public class TwoLayerNN implements Classifier {
 	 * @return the input to the output activation function
 	 */
 	private double calculateOutputActivation(double[] innerOutputs){
+		if (useFloats){
+			float floatActivationInput = floatInnerWeights[floatInnerWeights.length-1];
+			for (int i=0; i<innerOutputs.length; i++){
+				floatActivationInput += (float)innerOutputs[i]*floatInnerWeights[i];
+			}
+			return floatActivationInput;
+		}
 		//Initiliaze as 1*finalWeight to account for bias
 		double activationInput = innerWeights[innerWeights.length-1];
 		for (int i=0; i<innerOutputs.length; i++){
@@ -265,7 +385,10 @@ public class TwoLayerNN implements Classifier {
 	 * @return a list of new weights for the edges between hidden nodes and the output node.
 	 */
 	private double[] calculateInnerWeightUpdates(double[] innerOutputs,double outputDerivative,double output,double label){
-		double[] toReturn = innerWeights.clone();
+		double[] toReturn = new double[numHidden+1];
+		for (int i = 0; i<toReturn.length; i++){
+			toReturn[i] = useFloats ? floatInnerWeights[i] : innerWeights[i];
+		}
 		for (int i = 0; i<toReturn.length-1; i++){
 			toReturn[i]+=eta*innerOutputs[i]*(label-output)*outputDerivative;
 		}
@@ -289,13 +412,38 @@ public class TwoLayerNN implements Classifier {
 	private double[][] calculateInputWeightUpdates(Example ex,double[] innerDerivatives,double outputDerivative,double output){
 		double[][] toReturn = inputWeights.clone();
 		double[] weightList;
+		double[] features = getFeatureValues(ex);
 		for (int j = 0; j<toReturn.length; j++){
 			weightList = toReturn[j];
-			for (int k=0; k<weightList.length; k++){
-				weightList[k]+=eta*ex.getFeature(k)*innerDerivatives[j]*innerWeights[j]*outputDerivative*(ex.getLabel()-output);
-			}
+			double step = eta*innerDerivatives[j]*innerWeights[j]*outputDerivative*(ex.getLabel()-output);
+			//weights += step * feature values
+			VectorKernels.get().axpy(step, features, 0, weightList, 0, features.length);
+			//To account for bias
+			weightList[weightList.length-1]+=step;
 		}
 		return toReturn;
 	}
 
+	/**
+	 * Float mode version of calculateInputWeightUpdates, which updates the
+	 * float weights in place rather than returning new weights.
+	 * 
+	 * @param ex - the example to update based on
+	 * @param innerDerivatives - the derivatives of the activation function for all
+	 * inner nodes.
+	 * @param outputDerivative - the derivative of the activation function for the output node
+	 * @param output - the output of the output node
+	 */
+	private void updateFloatInputWeights(Example ex,double[] innerDerivatives,double outputDerivative,double output){
+		float[] weightList;
+		float[] features = getFloatFeatureValues(ex);
+		for (int j = 0; j<floatInputWeights.length; j++){
+			weightList = floatInputWeights[j];
+			float step = (float)(eta*innerDerivatives[j]*floatInnerWeights[j]*outputDerivative*(ex.getLabel()-output));
+			VectorKernels.get().axpy(step, features, 0, weightList, 0, features.length);
+			//To account for bias
+			weightList[weightList.length-1]+=step;
+		}
+	}
+	
 }
@@ -32,11 +32,10 @@ public class AblationPreprocessor extends DataPreprocessor {
 	 * Preprocess test data, based on features removed in training
 	 * 
 	 * @param test - the dataset to preprocess
-	 * @return a copy of the dataset with features removed
+	 * @return a view of the dataset with features removed
 	 */
 	public DataSet preprocessTest(DataSet test) {
-		ArrayList<Example> examples = (ArrayList<Example>) test.getData().clone();
-		return returnCopyWithFeatures(examples, usableFeatures, unwantedFeatures);
+		return test.project(usableFeatures);
 	}
 	
 	/**
@@ -47,8 +46,6 @@ public class AblationPreprocessor extends DataPreprocessor {
 	 * @param n - number of features to remove
 	 */
 	public DataSet preprocessTrain(DataSet data, int n){
-		//Make copy of examples
-		ArrayList<Example> examples = (ArrayList<Example>) data.getData().clone();
 		HashMap<Integer,String> featureMap = data.getFeatureMap();
 		
 		//Setup for ablation study
@@ -62,7 +59,7 @@ public class AblationPreprocessor extends DataPreprocessor {
 		//Conduct ablation study for each feature, saving accuracies
 		HashMap<Integer, Double> featureErrors = new HashMap<Integer, Double>();
 		for(int i : data.getAllFeatureIndices()){
-			featureErrors.put(i, conductAblationStudy(i,examples, data));
+			featureErrors.put(i, conductAblationStudy(i, data));
 		}
 		//Sort errors in descending order
 		Collections.sort(unselected, new Comparator<Integer>(){
@@ -81,8 +78,8 @@ public class AblationPreprocessor extends DataPreprocessor {
 			usableFeatures.put(i, featureMap.get(i));
 		}
 		
-		//Return copy of dataset with n features removed
-		return returnCopyWithFeatures(examples, usableFeatures, unwantedFeatures);
+		//Return a view of the dataset with n features removed
+		return data.project(usableFeatures);
 	}
 	
 	/**
@@ -111,23 +108,20 @@ public class AblationPreprocessor extends DataPreprocessor {
 	 * from the dataset, and return classification accuracy for this new data.
 	 * 
 	 * @param featureNum - index of the feature to remove
-	 * @param examples - the examples to use in making a copy of the dataset
 	 * @param data - the dataset to remove a feature from
 	 * @return the accuracy of the classifier on the preprocessed dataset
 	 */
-	private double conductAblationStudy(int featureNum, ArrayList<Example> examples, DataSet data){
+	private double conductAblationStudy(int featureNum, DataSet data){
 		if(c==null){
 			c = new DecisionTreeClassifier();
 		}
-		ArrayList<Integer> unwanted = new ArrayList<Integer>();
-		unwanted.add(featureNum);
 		HashMap<Integer,String> usable = new HashMap<Integer,String>();
 		for (int i : data.getFeatureMap().keySet()){
 			if (i!=featureNum){
 				usable.put(i, data.getFeatureMap().get(i));
 			}
 		}
-		DataSet toTest = returnCopyWithFeatures(examples, usable, unwanted);
+		DataSet toTest = data.project(usable);
 		return TestExperiments.averageList(TestExperiments.testNFold(new CrossValidationSet(toTest,10),c,10));
 	}
 	
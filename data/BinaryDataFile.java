@@ -0,0 +1,481 @@
+package ml.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+/**
+ * Binary on-disk layout for a data set that can be memory mapped.
+ * 
+ * The file is a fixed size header followed by the examples in compressed
+ * sparse row form and then the feature map:
+ * 
+ *   int magic, int version, int numRows, int numFeatureIndices,
+ *   long numEntries, long featureMapOffset,
+ *   int sourceType, int sourceOption, long sourceSize, long sourceModified, long sourceHash
+ *   double[numRows]    labels
+ *   long[numRows+1]    rowStarts (row i's entries are rowStarts[i] to rowStarts[i+1]-1)
+ *   int[numEntries]    feature indices
+ *   (padding to a multiple of 8 bytes)
+ *   double[numEntries] feature values
+ *   int numFeatures, then (int index, UTF name) for each feature
+ * 
+ * Mapping the file keeps the examples off of the heap and in the OS page cache,
+ * where they can be shared by every JVM that has the file open.
+ * 
+ * The same layout is used to cache data sets parsed from CSV and text files
+ * (see writeCache); the source fields record which file the cache was built from
+ * and are -1 otherwise.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class BinaryDataFile {
+	private static final int MAGIC = 0x4D4C4453; // "MLDS"
+	private static final String CACHE_SUFFIX = ".cache";
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+	
+	// the source file is fingerprinted with a hash of this many evenly spaced blocks
+	private static final int HASH_BLOCKS = 16;
+	private static final int HASH_BLOCK_SIZE = 1 << 16;
+	
+	// a single mapping can't be bigger than 2GB, so the sections are mapped in chunks
+	private static final int CHUNK_BITS = 27;
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+	
+	/**
+	 * Write data in the binary format to filename
+	 * 
+	 * @param data the data set to write
+	 * @param filename the file to write to
+	 * @throws IOException
+	 */
+	public static void write(DataSet data, String filename) throws IOException{
+		write(data, filename, -1, -1, -1, -1, -1);
+	}
+	
+	/**
+	 * Write a cache of data, which was parsed from source, next to source
+	 * (in source + ".cache").  The cache is written to a temporary file first
+	 * so that other programs never see a partially written cache.
+	 * 
+	 * @param data the data set parsed from source
+	 * @param source the file data was parsed from
+	 * @param sourceType how source was parsed (e.g. DataSet.CSVFILE)
+	 * @param sourceOption any setting the parse depended on (e.g. the number of hash buckets), or 0
+	 * @throws IOException
+	 */
+	public static void writeCache(DataSet data, String source, int sourceType, int sourceOption) throws IOException{
+		Path sourcePath = Paths.get(source);
+		Path cache = Paths.get(source + CACHE_SUFFIX);
+		Path temp = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+		
+		try{
+			write(data, temp.toString(), sourceType, sourceOption, Files.size(sourcePath),
+					Files.getLastModifiedTime(sourcePath).toMillis(), fingerprint(sourcePath));
+			Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}finally{
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	/**
+	 * Map the cache for source written by writeCache, if there is one and source
+	 * hasn't changed (same size, modification time and fingerprint) since.
+	 * 
+	 * @param source
+	 * @param sourceType how source is to be parsed (e.g. DataSet.CSVFILE)
+	 * @param sourceOption any setting the parse depends on, as passed to writeCache
+	 * @return the cached examples or null if there's no up to date cache
+	 */
+	public static MappedExamples mapCache(String source, int sourceType, int sourceOption){
+		Path sourcePath = Paths.get(source);
+		Path cache = Paths.get(source + CACHE_SUFFIX);
+		
+		if( !Files.isRegularFile(cache) ){
+			return null;
+		}
+		
+		try{
+			MappedExamples cached = map(cache.toString());
+			
+			if( cached.sourceType == sourceType &&
+				cached.sourceOption == sourceOption &&
+				cached.sourceSize == Files.size(sourcePath) &&
+				cached.sourceModified == Files.getLastModifiedTime(sourcePath).toMillis() &&
+				cached.sourceHash == fingerprint(sourcePath) ){
+				return cached;
+			}
+		}catch( IOException e ){
+			// unreadable or from an old version, so just parse the source again
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Hash evenly spaced blocks of a file (including the first and last).  This
+	 * catches most edits that keep the same size and modification time without
+	 * having to read all of a large file.
+	 * 
+	 * @param path
+	 * @return the fingerprint
+	 * @throws IOException
+	 */
+	private static long fingerprint(Path path) throws IOException{
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		
+		try{
+			long size = channel.size();
+			CRC32 crc = new CRC32();
+			ByteBuffer block = ByteBuffer.allocate(HASH_BLOCK_SIZE);
+			
+			for( int i = 0; i < HASH_BLOCKS; i++ ){
+				long position = Math.max(0, (size - HASH_BLOCK_SIZE) * i / (HASH_BLOCKS-1));
+				block.clear();
+				
+				while( block.hasRemaining() && channel.read(block, position + block.position()) > 0 ){
+					// keep reading until the block is full or we hit the end
+				}
+				
+				block.flip();
+				crc.update(block);
+			}
+			
+			return crc.getValue();
+		}finally{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Write data in the binary format, recording where it came from.
+	 * 
+	 * @param data the data set to write
+	 * @param filename the file to write to
+	 * @param sourceType how source was parsed, or -1 if it wasn't
+	 * @param sourceOption
+	 * @param sourceSize
+	 * @param sourceModified
+	 * @param sourceHash
+	 * @throws IOException
+	 */
+	private static void write(DataSet data, String filename, int sourceType, int sourceOption, long sourceSize,
+			long sourceModified, long sourceHash) throws IOException{
+		List<Example> examples = data.getData();
+		long numEntries = 0;
+		
+		for( Example e: examples ){
+			numEntries += e.getNumFeatures();
+		}
+		
+		int numRows = examples.size();
+		long indicesOffset = HEADER_SIZE + 8L*numRows + 8L*(numRows+1);
+		long valuesOffset = indicesOffset + align(4*numEntries);
+		long featureMapOffset = valuesOffset + 8*numEntries;
+		
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		
+		try{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numRows);
+			out.writeInt(numFeatureIndices(data));
+			out.writeLong(numEntries);
+			out.writeLong(featureMapOffset);
+			out.writeInt(sourceType);
+			out.writeInt(sourceOption);
+			out.writeLong(sourceSize);
+			out.writeLong(sourceModified);
+			out.writeLong(sourceHash);
+			
+			for( Example e: examples ){
+				out.writeDouble(e.getLabel());
+			}
+			
+			long start = 0;
+			out.writeLong(start);
+			
+			for( Example e: examples ){
+				start += e.getNumFeatures();
+				out.writeLong(start);
+			}
+			
+			for( Example e: examples ){
+				for( int i = 0; i < e.getNumFeatures(); i++ ){
+					out.writeInt(e.getFeatureIndexAt(i));
+				}
+			}
+			
+			for( long i = 4*numEntries; i < align(4*numEntries); i++ ){
+				out.writeByte(0);
+			}
+			
+			for( Example e: examples ){
+				for( int i = 0; i < e.getNumFeatures(); i++ ){
+					out.writeDouble(e.getFeatureValueAt(i));
+				}
+			}
+			
+			HashMap<Integer, String> featureMap = data.getFeatureMap();
+			out.writeInt(featureMap.size());
+			
+			for( Integer index: featureMap.keySet() ){
+				out.writeInt(index);
+				out.writeUTF(featureMap.get(index));
+			}
+		}finally{
+			out.close();
+		}
+	}
+	
+	/**
+	 * Memory map a file written by write.
+	 * 
+	 * @param filename
+	 * @return the examples in the file, read directly from the mapping
+	 * @throws IOException
+	 */
+	public static MappedExamples map(String filename) throws IOException{
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		try{
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			
+			if( header.getInt() != MAGIC || header.getInt() != VERSION ){
+				throw new IOException(filename + " is not a binary data file");
+			}
+			
+			int numRows = header.getInt();
+			int numFeatureIndices = header.getInt();
+			long numEntries = header.getLong();
+			long featureMapOffset = header.getLong();
+			int sourceType = header.getInt();
+			int sourceOption = header.getInt();
+			long sourceSize = header.getLong();
+			long sourceModified = header.getLong();
+			long sourceHash = header.getLong();
+			
+			long labelsOffset = HEADER_SIZE;
+			long rowStartsOffset = labelsOffset + 8L*numRows;
+			long indicesOffset = rowStartsOffset + 8L*(numRows+1);
+			long valuesOffset = indicesOffset + align(4*numEntries);
+			
+			ByteBuffer[] labels = mapSection(channel, labelsOffset, numRows, 8);
+			ByteBuffer[] rowStarts = mapSection(channel, rowStartsOffset, numRows+1, 8);
+			ByteBuffer[] indices = mapSection(channel, indicesOffset, numEntries, 4);
+			ByteBuffer[] values = mapSection(channel, valuesOffset, numEntries, 8);
+			
+			// the feature map is small, so just read it onto the heap
+			channel.position(featureMapOffset);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+			int numFeatures = in.readInt();
+			
+			for( int i = 0; i < numFeatures; i++ ){
+				int index = in.readInt();
+				featureMap.put(index, in.readUTF());
+			}
+			
+			MappedExamples mapped = new MappedExamples(numRows, numFeatureIndices, featureMap, labels, rowStarts, indices, values);
+			mapped.sourceType = sourceType;
+			mapped.sourceOption = sourceOption;
+			mapped.sourceSize = sourceSize;
+			mapped.sourceModified = sourceModified;
+			mapped.sourceHash = sourceHash;
+			
+			return mapped;
+		}finally{
+			// the mappings stay valid after the channel is closed
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Map count elements of elementSize bytes starting at position
+	 * 
+	 * @param channel
+	 * @param position
+	 * @param count
+	 * @param elementSize
+	 * @return the mappings, each holding (at most) 2^CHUNK_BITS elements
+	 * @throws IOException
+	 */
+	private static ByteBuffer[] mapSection(FileChannel channel, long position, long count, int elementSize) throws IOException{
+		int numChunks = (int)((count + CHUNK_MASK) >>> CHUNK_BITS);
+		ByteBuffer[] chunks = new ByteBuffer[Math.max(numChunks, 1)];
+		
+		for( int i = 0; i < chunks.length; i++ ){
+			long first = (long)i << CHUNK_BITS;
+			long size = Math.min(count - first, 1L << CHUNK_BITS) * elementSize;
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + first*elementSize, Math.max(size, 0));
+		}
+		
+		return chunks;
+	}
+	
+	/**
+	 * @param data
+	 * @return one more than the largest feature index used in data
+	 */
+	private static int numFeatureIndices(DataSet data){
+		int max = -1;
+		
+		for( int index: data.getAllFeatureIndices() ){
+			max = Math.max(max, index);
+		}
+		
+		return max+1;
+	}
+	
+	/**
+	 * @param numBytes
+	 * @return numBytes rounded up to a multiple of 8
+	 */
+	private static long align(long numBytes){
+		return (numBytes + 7) & ~7L;
+	}
+	
+	/**
+	 * The examples of a mapped binary data file.  Each call to get decodes
+	 * the example straight from the mapping; nothing is cached on the heap,
+	 * so the list is read-only.
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	public static class MappedExamples extends AbstractList<Example> implements RandomAccess{
+		private int numRows;
+		private int numFeatureIndices;
+		private HashMap<Integer, String> featureMap;
+		private DoubleBuffer[] labels;
+		private LongBuffer[] rowStarts;
+		private IntBuffer[] indices;
+		private DoubleBuffer[] values;
+		
+		// where the data came from if this is a cache
+		private int sourceType;
+		private int sourceOption;
+		private long sourceSize;
+		private long sourceModified;
+		private long sourceHash;
+		
+		private MappedExamples(int numRows, int numFeatureIndices, HashMap<Integer, String> featureMap,
+				ByteBuffer[] labels, ByteBuffer[] rowStarts, ByteBuffer[] indices, ByteBuffer[] values){
+			this.numRows = numRows;
+			this.numFeatureIndices = numFeatureIndices;
+			this.featureMap = featureMap;
+			
+			this.labels = new DoubleBuffer[labels.length];
+			this.rowStarts = new LongBuffer[rowStarts.length];
+			this.indices = new IntBuffer[indices.length];
+			this.values = new DoubleBuffer[values.length];
+			
+			for( int i = 0; i < labels.length; i++ ){
+				this.labels[i] = labels[i].asDoubleBuffer();
+			}
+			
+			for( int i = 0; i < rowStarts.length; i++ ){
+				this.rowStarts[i] = rowStarts[i].asLongBuffer();
+			}
+			
+			for( int i = 0; i < indices.length; i++ ){
+				this.indices[i] = indices[i].asIntBuffer();
+			}
+			
+			for( int i = 0; i < values.length; i++ ){
+				this.values[i] = values[i].asDoubleBuffer();
+			}
+		}
+		
+		@Override
+		public Example get(int row) {
+			if( row < 0 || row >= numRows ){
+				throw new IndexOutOfBoundsException("Row " + row + " of " + numRows);
+			}
+			
+			long start = getRowStart(row);
+			int numFeatures = (int)(getRowStart(row+1) - start);
+			int[] rowIndices = new int[numFeatures];
+			double[] rowValues = new double[numFeatures];
+			
+			for( int i = 0; i < numFeatures; i++ ){
+				long entry = start + i;
+				rowIndices[i] = indices[(int)(entry >>> CHUNK_BITS)].get((int)(entry & CHUNK_MASK));
+				rowValues[i] = values[(int)(entry >>> CHUNK_BITS)].get((int)(entry & CHUNK_MASK));
+			}
+			
+			return new Example(rowIndices, rowValues, numFeatures, getLabel(row));
+		}
+		
+		@Override
+		public int size() {
+			return numRows;
+		}
+		
+		/**
+		 * Get the label of a row without decoding the example
+		 * 
+		 * @param row
+		 * @return the label of row
+		 */
+		public double getLabel(int row){
+			return labels[row >>> CHUNK_BITS].get((int)(row & CHUNK_MASK));
+		}
+		
+		/**
+		 * @return the set of distinct labels in the file
+		 */
+		public HashSet<Double> getLabels(){
+			HashSet<Double> labelSet = new HashSet<Double>();
+			
+			for( int row = 0; row < numRows; row++ ){
+				labelSet.add(getLabel(row));
+			}
+			
+			return labelSet;
+		}
+		
+		/**
+		 * @return one more than the largest feature index in the file
+		 */
+		public int getNumFeatureIndices(){
+			return numFeatureIndices;
+		}
+		
+		/**
+		 * @return the mapping from feature index to feature name
+		 */
+		public HashMap<Integer, String> getFeatureMap(){
+			return featureMap;
+		}
+		
+		private long getRowStart(int row){
+			return rowStarts[row >>> CHUNK_BITS].get((int)(row & CHUNK_MASK));
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package ml.data;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Column-major storage of which rows have a non-zero value for each feature
+ * and which rows have each label, packed 64 rows to a long.  Row r is bit
+ * (r % 64) of word (r / 64).
+ * 
+ * This is all a decision tree needs to know about the data, since it only
+ * ever tests whether a feature is zero (DecisionTreeNode.LEFT_BRANCH) or not.
+ * The number of examples of a class that go down the right branch of a
+ * split is then just the bit count of (rows & feature & class), a word at
+ * a time.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class BitColumnData {
+	private long[][] columns; // columns[featureIndex], null for unused feature indices
+	private long[][] classes; // classes[classId]
+	private int numRows;
+	private int numWords;
+	
+	/**
+	 * Pack the columns of a list of examples
+	 * 
+	 * @param rows the examples, one per row
+	 * @param features the feature indices to store a column for
+	 * @param numIndices one more than the largest feature index
+	 * @param classIds the class id of each row's label
+	 * @param numClasses the number of class ids
+	 */
+	public BitColumnData(List<Example> rows, Set<Integer> features, int numIndices, int[] classIds, int numClasses){
+		numRows = rows.size();
+		numWords = (numRows + 63) >>> 6;
+		columns = new long[numIndices][];
+		classes = new long[numClasses][numWords];
+		
+		for( int f: features ){
+			columns[f] = new long[numWords];
+		}
+		
+		for( int row = 0; row < numRows; row++ ){
+			Example e = rows.get(row);
+			long bit = 1L << row;
+			
+			for( int i = 0; i < e.getNumFeatures(); i++ ){
+				int f = e.getFeatureIndexAt(i);
+				
+				if( f < numIndices && columns[f] != null && e.getFeatureValueAt(i) != 0 ){
+					columns[f][row >>> 6] |= bit;
+				}
+			}
+			
+			classes[classIds[row]][row >>> 6] |= bit;
+		}
+	}
+	
+	/**
+	 * @return the number of rows
+	 */
+	public int getNumRows(){
+		return numRows;
+	}
+	
+	/**
+	 * Get the rows that have a non-zero value for a feature.  The array is the
+	 * backing storage and should NOT be modified.
+	 * 
+	 * @param featureIndex
+	 * @return the bits of the rows where featureIndex isn't zero
+	 */
+	public long[] getColumn(int featureIndex){
+		return columns[featureIndex];
+	}
+	
+	/**
+	 * Get the rows that have a label.  The array is the backing storage and
+	 * should NOT be modified.
+	 * 
+	 * @param classId the class id of the label (see DataSet.getClassLabels)
+	 * @return the bits of the rows with that label
+	 */
+	public long[] getClassRows(int classId){
+		return classes[classId];
+	}
+	
+	/**
+	 * @return a new set of bits with every row set
+	 */
+	public long[] allRows(){
+		long[] all = new long[numWords];
+		
+		for( int w = 0; w < numWords; w++ ){
+			all[w] = -1L;
+		}
+		
+		if( (numRows & 63) != 0 ){
+			all[numWords-1] = (1L << numRows) - 1;
+		}
+		
+		return all;
+	}
+	
+	/**
+	 * @param bits
+	 * @return the number of rows set in bits
+	 */
+	public static int count(long[] bits){
+		int count = 0;
+		
+		for( int w = 0; w < bits.length; w++ ){
+			count += Long.bitCount(bits[w]);
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * @param a
+	 * @param b
+	 * @return the number of rows set in both a and b
+	 */
+	public static int countBoth(long[] a, long[] b){
+		int count = 0;
+		
+		for( int w = 0; w < a.length; w++ ){
+			count += Long.bitCount(a[w] & b[w]);
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * @param a
+	 * @param b
+	 * @return a new set of the rows set in both a and b
+	 */
+	public static long[] and(long[] a, long[] b){
+		long[] result = new long[a.length];
+		
+		for( int w = 0; w < a.length; w++ ){
+			result[w] = a[w] & b[w];
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @param a
+	 * @param b
+	 * @return a new set of the rows set in a but not in b
+	 */
+	public static long[] andNot(long[] a, long[] b){
+		long[] result = new long[a.length];
+		
+		for( int w = 0; w < a.length; w++ ){
+			result[w] = a[w] & ~b[w];
+		}
+		
+		return result;
+	}
+}
@@ -0,0 +1,515 @@
+package ml.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A class for reading data examples from CSV files a byte at a time.
+ * 
+ * Unlike CSVDataReader, no Strings are created for the lines or cells: the file
+ * is memory mapped, the numbers are parsed in place from the bytes and the values
+ * are written straight into ColumnarData.  The file has the same format as for
+ * DataSet.CSVFILE: optional lines starting with # followed by a header line and
+ * then one example per line with the label in the last column.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class ByteCSVDataReader {
+	// how much of the file to map at a time
+	private static final int WINDOW_SIZE = 1 << 30;
+	
+	// the smallest piece of the file worth parsing on its own thread
+	private static final long MIN_CHUNK_SIZE = 4 << 20;
+	
+	// the powers of ten that can be represented exactly as doubles
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	
+	private String filename;
+	private HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+	private int numColumns; // including the label
+	private int labelIndex; // the index that the label is at (0-based)
+	private long dataStart; // where the first example starts in the file
+	
+	/**
+	 * Create a new reader for filename and read the header information
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public ByteCSVDataReader(String filename) throws IOException{
+		this.filename = filename;
+		
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		try{
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), WINDOW_SIZE));
+			int limit = buffer.limit();
+			int pos = 0;
+			
+			// ignore any lines at the beginning that start with #
+			while( pos < limit && buffer.get(pos) == '#' ){
+				pos = nextLine(buffer, pos, limit);
+			}
+			
+			int end = nextLine(buffer, pos, limit);
+			int headerEnd = end;
+			
+			while( headerEnd > pos && (buffer.get(headerEnd-1) == '\n' || buffer.get(headerEnd-1) == '\r') ){
+				headerEnd--;
+			}
+			
+			// parse the headers
+			byte[] headerBytes = new byte[headerEnd-pos];
+			
+			for( int i = 0; i < headerBytes.length; i++ ){
+				headerBytes[i] = buffer.get(pos+i);
+			}
+			
+			String[] headers = new String(headerBytes, StandardCharsets.UTF_8).split(",");
+			numColumns = headers.length;
+			labelIndex = numColumns-1;
+			int featureIndex = 0;
+			
+			for( int i = 0; i < headers.length; i++ ){
+				if( i != labelIndex ){
+					featureMap.put(featureIndex, headers[i]);
+					featureIndex++;
+				}
+			}
+			
+			dataStart = end;
+		}finally{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Get the mapping from feature indices to the names in the header
+	 * 
+	 * @return feature map
+	 */
+	public HashMap<Integer, String> getFeatureMap(){
+		return featureMap;
+	}
+	
+	/**
+	 * @return the number of columns in the file, including the label
+	 */
+	public int getNumColumns(){
+		return numColumns;
+	}
+	
+	/**
+	 * @return where the first example starts in the file
+	 */
+	public long getDataStart(){
+		return dataStart;
+	}
+	
+	/**
+	 * Read all of the examples in the file
+	 * 
+	 * @return the examples, stored by column
+	 * @throws IOException
+	 */
+	public ColumnarData read() throws IOException{
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		try{
+			long size = channel.size();
+			ColumnarData data = newColumns(size - dataStart);
+			read(channel, dataStart, size, data);
+			data.trim();
+			
+			return data;
+		}finally{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Read all of the examples in the file in parallel.  The file is split into
+	 * chunks that start and end on line boundaries, the chunks are parsed on pool
+	 * and the results are put back together in the same order as the file.
+	 * 
+	 * @param pool
+	 * @return the examples, stored by column
+	 * @throws IOException
+	 */
+	public ColumnarData readParallel(ForkJoinPool pool) throws IOException{
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		try{
+			long size = channel.size();
+			long numBytes = size - dataStart;
+			int numChunks = (int)Math.max(1, Math.min(pool.getParallelism()*4L, numBytes / MIN_CHUNK_SIZE));
+			
+			if( numChunks == 1 ){
+				ColumnarData data = newColumns(numBytes);
+				read(channel, dataStart, size, data);
+				data.trim();
+				return data;
+			}
+			
+			// move each evenly spaced boundary forward to the start of a line
+			long[] bounds = new long[numChunks+1];
+			bounds[0] = dataStart;
+			bounds[numChunks] = size;
+			
+			for( int i = 1; i < numChunks; i++ ){
+				bounds[i] = Math.max(bounds[i-1], nextLineStart(channel, dataStart + numBytes*i/numChunks, size));
+			}
+			
+			ColumnarData[] parts = new ColumnarData[numChunks];
+			
+			try{
+				pool.invoke(new ChunkTask(channel, bounds, parts, 0, numChunks));
+			}catch( UncheckedIOException e ){
+				// a chunk couldn't be read (see ChunkTask)
+				throw e.getCause();
+			}
+			
+			return ColumnarData.concatenate(parts);
+		}finally{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Find the start of the first line at or after position.
+	 * 
+	 * @param channel
+	 * @param position
+	 * @param size the size of the file
+	 * @return the position just after the first newline at or after position-1
+	 * @throws IOException
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException{
+		// position is already at the start of a line if the previous byte is a newline
+		position = Math.max(position-1, 0);
+		
+		while( position < size ){
+			long length = Math.min(1 << 16, size - position);
+			ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int next = nextLine(window, 0, (int)length);
+			
+			if( next < length || window.get(next-1) == '\n' ){
+				return position + next;
+			}
+			
+			position += length;
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Read all of the examples between byte start and byte end of the file
+	 * into data.  start must be the beginning of a line and end either the
+	 * end of the file or just after a newline.
+	 * 
+	 * @param channel the file
+	 * @param start
+	 * @param end
+	 * @param data where to put the examples
+	 * @throws IOException
+	 */
+	void read(FileChannel channel, long start, long end, ColumnarData data) throws IOException{
+		LineParser parser = new LineParser();
+		long position = start;
+		
+		while( position < end ){
+			long length = Math.min(WINDOW_SIZE, end - position);
+			ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int windowEnd = (int)length;
+			
+			// only parse complete lines unless we're at the end
+			if( position + length < end ){
+				while( windowEnd > 0 && window.get(windowEnd-1) != '\n' ){
+					windowEnd--;
+				}
+				
+				if( windowEnd == 0 ){
+					throw new IOException("Line longer than " + WINDOW_SIZE + " bytes in " + filename);
+				}
+			}
+			
+			parser.parseLines(window, 0, windowEnd, data);
+			position += windowEnd;
+		}
+	}
+	
+	/**
+	 * Create empty columns with room for about the number of rows in numBytes
+	 * 
+	 * @param numBytes
+	 * @return the empty columns
+	 */
+	ColumnarData newColumns(long numBytes){
+		// each cell is at least a digit and a comma, and usually more like 4
+		// bytes, so guess 4 (addRow makes more room if the guess is short)
+		long estimate = numBytes / (4L*numColumns) + 16;
+		return new ColumnarData(numColumns-1, (int)Math.min(estimate, 1 << 24));
+	}
+	
+	/**
+	 * @param buffer
+	 * @param pos
+	 * @param limit
+	 * @return the position just after the next newline (or limit)
+	 */
+	static int nextLine(ByteBuffer buffer, int pos, int limit){
+		while( pos < limit && buffer.get(pos) != '\n' ){
+			pos++;
+		}
+		
+		return pos < limit ? pos+1 : limit;
+	}
+	
+	/**
+	 * Parses the chunks between bounds[start] and bounds[end] by splitting
+	 * the range in half until there's a single chunk.
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private class ChunkTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		
+		private FileChannel channel;
+		private long[] bounds;
+		private ColumnarData[] parts;
+		private int start;
+		private int end;
+		
+		public ChunkTask(FileChannel channel, long[] bounds, ColumnarData[] parts, int start, int end){
+			this.channel = channel;
+			this.bounds = bounds;
+			this.parts = parts;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if( end - start > 1 ){
+				int middle = (start + end) / 2;
+				invokeAll(new ChunkTask(channel, bounds, parts, start, middle),
+						new ChunkTask(channel, bounds, parts, middle, end));
+			}else{
+				try{
+					ColumnarData part = newColumns(bounds[end] - bounds[start]);
+					read(channel, bounds[start], bounds[end], part);
+					part.trim();
+					parts[start] = part;
+				}catch( IOException e ){
+					// compute can't throw checked exceptions, so this is unwrapped by readParallel
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Parses lines of numbers out of a buffer.  The position and value of the
+	 * last number parsed are kept as fields so that nothing is allocated per
+	 * number.
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private class LineParser{
+		private int pos;
+		private double value;
+		
+		/**
+		 * Parse all of the lines in buffer between start and end into data
+		 * 
+		 * @param buffer
+		 * @param start
+		 * @param end
+		 * @param data
+		 */
+		public void parseLines(ByteBuffer buffer, int start, int end, ColumnarData data){
+			pos = start;
+			
+			while( pos < end ){
+				byte b = buffer.get(pos);
+				
+				// skip blank lines
+				if( b == '\n' || b == '\r' ){
+					pos++;
+					continue;
+				}
+				
+				int row = data.addRow();
+				int featureIndex = 0;
+				
+				for( int column = 0; column < numColumns; column++ ){
+					parseValue(buffer, end);
+					
+					if( column == labelIndex ){
+						data.setLabel(row, value);
+					}else{
+						data.setValue(row, featureIndex, value);
+						featureIndex++;
+					}
+					
+					if( pos < end && buffer.get(pos) == ',' && column < numColumns-1 ){
+						pos++;
+					}
+				}
+				
+				// move on to the next line (ignoring anything extra on this one)
+				pos = nextLine(buffer, pos, end);
+			}
+		}
+		
+		/**
+		 * Parse the number starting at pos into value, leaving pos at the
+		 * character after the number.  Simple decimal numbers are parsed
+		 * directly from the bytes; anything else (e.g. more than 15 significant
+		 * digits, NaN) falls back to Double.parseDouble.
+		 * 
+		 * @param buffer
+		 * @param end
+		 */
+		private void parseValue(ByteBuffer buffer, int end){
+			int cellStart = pos;
+			skipSpaces(buffer, end);
+			
+			boolean negative = false;
+			
+			if( pos < end && (buffer.get(pos) == '-' || buffer.get(pos) == '+') ){
+				negative = buffer.get(pos) == '-';
+				pos++;
+			}
+			
+			long mantissa = 0;
+			int numDigits = 0;
+			int exponent = 0;
+			boolean sawDigit = false;
+			
+			while( pos < end && isDigit(buffer.get(pos)) ){
+				mantissa = addDigit(mantissa, buffer.get(pos), numDigits);
+				numDigits += (mantissa == 0) ? 0 : 1;
+				sawDigit = true;
+				pos++;
+			}
+			
+			if( pos < end && buffer.get(pos) == '.' ){
+				pos++;
+				
+				while( pos < end && isDigit(buffer.get(pos)) ){
+					mantissa = addDigit(mantissa, buffer.get(pos), numDigits);
+					numDigits += (mantissa == 0) ? 0 : 1;
+					exponent--;
+					sawDigit = true;
+					pos++;
+				}
+			}
+			
+			if( sawDigit && pos < end && (buffer.get(pos) == 'e' || buffer.get(pos) == 'E') ){
+				pos++;
+				boolean negativeExponent = false;
+				
+				if( pos < end && (buffer.get(pos) == '-' || buffer.get(pos) == '+') ){
+					negativeExponent = buffer.get(pos) == '-';
+					pos++;
+				}
+				
+				int explicitExponent = 0;
+				boolean sawExponentDigit = false;
+				
+				while( pos < end && isDigit(buffer.get(pos)) ){
+					explicitExponent = Math.min(explicitExponent*10 + (buffer.get(pos) - '0'), 100000);
+					sawExponentDigit = true;
+					pos++;
+				}
+				
+				sawDigit = sawExponentDigit;
+				exponent += negativeExponent ? -explicitExponent : explicitExponent;
+			}
+			
+			skipSpaces(buffer, end);
+			
+			if( sawDigit && numDigits <= 15 && exponent >= -22 && exponent <= 22 && atCellEnd(buffer, end) ){
+				// exact: both the mantissa and the power of ten are exactly representable
+				value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+				value = negative ? -value : value;
+			}else{
+				pos = cellStart;
+				value = parseCell(buffer, end);
+			}
+		}
+		
+		/**
+		 * The slow path: parse the rest of the cell with Double.parseDouble
+		 * 
+		 * @param buffer
+		 * @param end
+		 * @return the value in the cell
+		 */
+		private double parseCell(ByteBuffer buffer, int end){
+			int cellStart = pos;
+			
+			while( !atCellEnd(buffer, end) ){
+				pos++;
+			}
+			
+			byte[] cell = new byte[pos - cellStart];
+			
+			for( int i = 0; i < cell.length; i++ ){
+				cell[i] = buffer.get(cellStart+i);
+			}
+			
+			return Double.parseDouble(new String(cell, StandardCharsets.US_ASCII));
+		}
+		
+		private void skipSpaces(ByteBuffer buffer, int end){
+			while( pos < end && (buffer.get(pos) == ' ' || buffer.get(pos) == '\t') ){
+				pos++;
+			}
+		}
+		
+		private boolean atCellEnd(ByteBuffer buffer, int end){
+			if( pos >= end ){
+				return true;
+			}
+			
+			byte b = buffer.get(pos);
+			return b == ',' || b == '\n' || b == '\r';
+		}
+	}
+	
+	private static boolean isDigit(byte b){
+		return b >= '0' && b <= '9';
+	}
+	
+	/**
+	 * Append a digit to the mantissa.  Once there are too many digits to be
+	 * exact the mantissa is left alone and the caller takes the slow path.
+	 * 
+	 * @param mantissa
+	 * @param digit
+	 * @param numDigits significant digits seen so far
+	 * @return the new mantissa
+	 */
+	private static long addDigit(long mantissa, byte digit, int numDigits){
+		return numDigits < 18 ? mantissa*10 + (digit - '0') : mantissa;
+	}
+}
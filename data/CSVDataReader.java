@@ -62,6 +62,11 @@ public class CSVDataReader implements Iterator<Example>{
 			
 			try {
 				nextLine = in.readLine();
+				
+				// done with the file
+				if( nextLine == null ){
+					in.close();
+				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -0,0 +1,261 @@
+package ml.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Column-major storage for a dense data set.  Each feature is stored as a
+ * contiguous double[] with one entry per row, along with a double[] column of
+ * labels, so per-feature scans are linear sweeps over a primitive array.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class ColumnarData {
+	private double[][] columns; // columns[featureIndex][row], null for unused feature indices
+	private double[] labels; // labels[row]
+	private int numRows;
+	private int[] storedIndices; // the feature indices with a column, built when first needed (see getRow)
+	
+	/**
+	 * Build the columns from a list of examples
+	 * 
+	 * @param rows the examples, one per row
+	 * @param features the feature indices to store a column for
+	 * @param numIndices one more than the largest feature index
+	 */
+	public ColumnarData(List<Example> rows, Set<Integer> features, int numIndices){
+		numRows = rows.size();
+		columns = new double[numIndices][];
+		labels = new double[numRows];
+		
+		for( int f: features ){
+			columns[f] = new double[numRows];
+		}
+		
+		for( int row = 0; row < numRows; row++ ){
+			Example e = rows.get(row);
+			labels[row] = e.getLabel();
+			
+			for( int i = 0; i < e.getNumFeatures(); i++ ){
+				int f = e.getFeatureIndexAt(i);
+				
+				if( f < numIndices && columns[f] != null ){
+					columns[f][row] = e.getFeatureValueAt(i);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Create empty columns to be filled in a row at a time (see addRow)
+	 * 
+	 * @param numColumns the number of feature columns, all of which are stored
+	 * @param capacity the initial number of rows to make room for
+	 */
+	ColumnarData(int numColumns, int capacity){
+		capacity = Math.max(capacity, 1);
+		columns = new double[numColumns][capacity];
+		labels = new double[capacity];
+	}
+	
+	/**
+	 * Add a new row of zeros to the end of the data, making room for it if needed
+	 * 
+	 * @return the index of the new row
+	 */
+	int addRow(){
+		if( numRows == labels.length ){
+			int capacity = labels.length*2;
+			labels = Arrays.copyOf(labels, capacity);
+			
+			for( int f = 0; f < columns.length; f++ ){
+				columns[f] = Arrays.copyOf(columns[f], capacity);
+			}
+		}
+		
+		return numRows++;
+	}
+	
+	/**
+	 * Set a single value
+	 * 
+	 * @param row
+	 * @param featureIndex
+	 * @param value
+	 */
+	void setValue(int row, int featureIndex, double value){
+		columns[featureIndex][row] = value;
+	}
+	
+	/**
+	 * Set the label of a row
+	 * 
+	 * @param row
+	 * @param label
+	 */
+	void setLabel(int row, double label){
+		labels[row] = label;
+	}
+	
+	/**
+	 * Release any space reserved by addRow that wasn't used
+	 */
+	void trim(){
+		if( numRows < labels.length ){
+			labels = Arrays.copyOf(labels, numRows);
+			
+			for( int f = 0; f < columns.length; f++ ){
+				if( columns[f] != null ){
+					columns[f] = Arrays.copyOf(columns[f], numRows);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Stack the rows of several column stores (which must have the same
+	 * columns) into one, in order.
+	 * 
+	 * @param parts
+	 * @return the rows of parts[0], followed by the rows of parts[1], etc.
+	 */
+	static ColumnarData concatenate(ColumnarData[] parts){
+		int numRows = 0;
+		
+		for( ColumnarData part: parts ){
+			numRows += part.numRows;
+		}
+		
+		ColumnarData all = new ColumnarData(parts[0].columns.length, numRows);
+		int row = 0;
+		
+		for( ColumnarData part: parts ){
+			System.arraycopy(part.labels, 0, all.labels, row, part.numRows);
+			
+			for( int f = 0; f < all.columns.length; f++ ){
+				System.arraycopy(part.columns[f], 0, all.columns[f], row, part.numRows);
+			}
+			
+			row += part.numRows;
+		}
+		
+		all.numRows = numRows;
+		all.trim();
+		return all;
+	}
+	
+	/**
+	 * @return the number of rows
+	 */
+	public int getNumRows(){
+		return numRows;
+	}
+	
+	/**
+	 * Get the column of values for a feature.  The array is the backing
+	 * storage and should NOT be modified.
+	 * 
+	 * @param featureIndex
+	 * @return the values of featureIndex for every row
+	 */
+	public double[] getColumn(int featureIndex){
+		return columns[featureIndex];
+	}
+	
+	/**
+	 * Get the column of labels.  The array is the backing storage and
+	 * should NOT be modified.
+	 * 
+	 * @return the label for every row
+	 */
+	public double[] getLabels(){
+		return labels;
+	}
+	
+	/**
+	 * Get a single value
+	 * 
+	 * @param row
+	 * @param featureIndex
+	 * @return the value of featureIndex in row
+	 */
+	public double getValue(int row, int featureIndex){
+		return columns[featureIndex][row];
+	}
+	
+	/**
+	 * Build an example for a row of this data
+	 * 
+	 * @param row
+	 * @return a new example with the values of row
+	 */
+	public Example getRow(int row){
+		if( storedIndices == null ){
+			int numFeatures = 0;
+			
+			for( int f = 0; f < columns.length; f++ ){
+				if( columns[f] != null ){
+					numFeatures++;
+				}
+			}
+			
+			storedIndices = new int[numFeatures];
+			int i = 0;
+			
+			for( int f = 0; f < columns.length; f++ ){
+				if( columns[f] != null ){
+					storedIndices[i++] = f;
+				}
+			}
+		}
+		
+		double[] values = new double[storedIndices.length];
+		
+		for( int i = 0; i < values.length; i++ ){
+			values[i] = columns[storedIndices[i]][row];
+		}
+		
+		// each example gets its own indices, since it can add features
+		return new Example(storedIndices.clone(), values, values.length, labels[row]);
+	}
+	
+	/**
+	 * Get the rows as a read-only list of examples.  Nothing is copied: each
+	 * get builds the example from the columns (see getRow), so changing an
+	 * example doesn't change the data.
+	 * 
+	 * @return the examples
+	 */
+	public List<Example> getRows(){
+		return new Rows();
+	}
+	
+	/**
+	 * The rows of the columns, built when they're asked for
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private class Rows extends AbstractList<Example> implements RandomAccess{
+		@Override
+		public Example get(int index) {
+			if( index < 0 || index >= numRows ){
+				throw new IndexOutOfBoundsException("Row " + index + " of " + numRows);
+			}
+			
+			return getRow(index);
+		}
+		
+		@Override
+		public int size() {
+			return numRows;
+		}
+	}
+}
@@ -1,8 +1,6 @@
 package ml.data;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Random;
+import java.util.Arrays;
 
 /**
  * Data set for storing and retrieving an n-fold cross validation data set.
@@ -62,31 +60,31 @@ public class CrossValidationSet {
 		if( splitNum >= numSplits || splitNum < 0){
 			return null;
 		}else{
-			ArrayList<Example> data;
+			int size = dataset.size();
+			int[] rows;
 			
 			if( randomize ){
-				data = (ArrayList<Example>)dataset.getData().clone();
-				Collections.shuffle(data, new Random(System.nanoTime()));
+				rows = DataSet.shuffledRows(size);
 			}else{
-				data = dataset.getData();
+				rows = new int[size];
+				
+				for( int i = 0; i < size; i++ ){
+					rows[i] = i;
+				}
 			}
 			
 			// this tends to make the last split more off-sized, but it will suffice
-			int partSize = (int)(data.size()/numSplits);
+			int partSize = (int)(size/numSplits);
 			int begin = partSize*splitNum;
-			int end = splitNum == numSplits-1 ? data.size() : partSize*(splitNum+1);
+			int end = splitNum == numSplits-1 ? size : partSize*(splitNum+1);
 			
-			DataSet train = new DataSet(dataset.getFeatureMap());
-			DataSet test = new DataSet(dataset.getFeatureMap());
+			// the test rows are [begin, end) and the training rows are the rest
+			int[] trainRows = new int[size - (end-begin)];
+			System.arraycopy(rows, 0, trainRows, 0, begin);
+			System.arraycopy(rows, end, trainRows, begin, size-end);
 			
-			for( int i = 0; i < data.size(); i++ ){
-				// check if we're in the test range
-				if( i >= begin && i < end ){
-					test.addData(data.get(i));
-				}else{
-					train.addData(data.get(i));
-				}
-			}
+			DataSet train = dataset.subset(trainRows);
+			DataSet test = dataset.subset(Arrays.copyOfRange(rows, begin, end));
 			
 			return new DataSetSplit(train, test);
 		}
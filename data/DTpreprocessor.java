@@ -15,7 +15,6 @@ import ml.data.Example;
 import ml.classifiers.DecisionTreeNode;
 import ml.data.DataPreprocessor;
 import ml.data.DataSet;
-import ml.utils.HashMapCounter;
 
 /**
  * Implements the training error feature selection (decision tree)
@@ -40,11 +39,10 @@ public class DTpreprocessor extends DataPreprocessor{
 	 * Preprocess test data, based on features removed in training
 	 * 
 	 * @param test - the dataset to preprocess
-	 * @return a copy of the dataset with features removed
+	 * @return a view of the dataset with features removed
 	 */
 	public DataSet preprocessTest(DataSet test) {
-		ArrayList<Example> examples = (ArrayList<Example>) test.getData().clone();
-		return returnCopyWithFeatures(examples, usableFeatures, unwantedFeatures);
+		return test.project(usableFeatures);
 	}
 	
 	/**
@@ -55,15 +53,29 @@ public class DTpreprocessor extends DataPreprocessor{
 	 * @param n - number of features to remove
 	 */
 	public DataSet preprocessTrain(DataSet data, int n){
-		ArrayList<Example> examples = (ArrayList<Example>) data.getData().clone();
 		Set<Integer> features = data.getAllFeatureIndices();
 		if(n >= features.size() + 1){
 			throw new RuntimeException("Trying to eliminate too many features");
 		}
 		//Collect feature errors, as decided by a decision tree
 		ArrayList<Map.Entry<Integer, Double>> featureErrors = new ArrayList<Map.Entry<Integer, Double>>();		
-		for(Integer f:features){
-			featureErrors.add(new AbstractMap.SimpleEntry<Integer, Double>(f, averageTrainingError(examples,f)));
+		if(data.isDense()){
+			BitColumnData bits = data.getBitColumns();
+			int[] classCounts = new int[data.getNumClasses()];
+			
+			for( int classId = 0; classId < classCounts.length; classId++ ){
+				classCounts[classId] = BitColumnData.count(bits.getClassRows(classId));
+			}
+			for(Integer f:features){
+				featureErrors.add(new AbstractMap.SimpleEntry<Integer, Double>(f, averageTrainingError(bits, f, classCounts)));
+			}
+		}else{
+			//Sparse data would take a bit per feature per row as bits, so count
+			//the non-zero features of each example instead
+			HashMap<Integer, Double> errors = sparseTrainingErrors(data, features);
+			for(Integer f:features){
+				featureErrors.add(new AbstractMap.SimpleEntry<Integer, Double>(f, errors.get(f)));
+			}
 		}
 		Collections.sort(featureErrors, new Comparator<Map.Entry<Integer, Double>>(){
 			public int compare(Map.Entry<Integer, Double> e1, Map.Entry<Integer, Double> e2){
@@ -81,8 +93,8 @@ public class DTpreprocessor extends DataPreprocessor{
 			Integer key = f.getKey();
 			usableFeatures.put(key, key.toString());
 		}
-		//Return a copy of the dataset with worst features removed
-		return returnCopyWithFeatures(examples, usableFeatures, unwantedFeatures);
+		//Return a view of the dataset with worst features removed
+		return data.project(usableFeatures);
 
 	}
 	
@@ -90,92 +102,78 @@ public class DTpreprocessor extends DataPreprocessor{
 	 * Returns the average training error if only the specified feature were used
 	 * to predict the data.
 	 * 
-	 * @param data - the list of examples to calculate training error for
+	 * @param bits - which examples have a non-zero value for each feature and each label
 	 * @param featureIndex - the feature to split on
+	 * @param classCounts - the number of examples with each class id
 	 * @return the average training error after splitting on the feature
 	 */
-	private double averageTrainingError(ArrayList<Example> data, int featureIndex){		
-		ArrayList<Example>[] splits = splitData(data, featureIndex);
+	private double averageTrainingError(BitColumnData bits, int featureIndex, int[] classCounts){
+		long[] column = bits.getColumn(featureIndex);
+		int leftCount = 0;
+		int rightCount = 0;
 		
-		int leftCount = splits[0].size() > 0 ? getMajorityLabel(splits[0]).majorityCount : 0;
-		int rightCount = splits[1].size() > 0 ? getMajorityLabel(splits[1]).majorityCount : 0;
+		//Split the labels based on the feature value (non-zero goes right) and
+		//predict the majority label on each side
+		for( int classId = 0; classId < classCounts.length; classId++ ){
+			int right = BitColumnData.countBoth(bits.getClassRows(classId), column);
+			leftCount = Math.max(leftCount, classCounts[classId] - right);
+			rightCount = Math.max(rightCount, right);
+		}
 		
-		double accuracy = (leftCount+rightCount)/(double)data.size();
+		double accuracy = (leftCount+rightCount)/(double)bits.getNumRows();
 		return 1-accuracy;
 	}
 	
 	/**
-	 * Calculates the majority label for a set of examples
+	 * Returns the average training error if only the feature were used to predict
+	 * the data, for every feature, in one pass over the examples.
 	 * 
-	 * @param data - the set of examples
-	 * @return the majority label
+	 * @param data - the (sparse) dataset
+	 * @param features - the features to get the error of
+	 * @return the average training error after splitting on each feature
 	 */
-	private DataMajority getMajorityLabel(ArrayList<Example> data){
-		HashMapCounter<Double> counter = new HashMapCounter<Double>();
+	private HashMap<Integer, Double> sparseTrainingErrors(DataSet data, Set<Integer> features){
+		int[] classIds = data.getClassIdColumn();
+		int numClasses = data.getNumClasses();
+		int[] classCounts = new int[numClasses];
+		HashMap<Integer, int[]> rightCounts = new HashMap<Integer, int[]>();
 		
-		for( Example d: data ){
-			counter.increment(d.getLabel());
+		for(Integer f:features){
+			rightCounts.put(f, new int[numClasses]);
 		}
 		
-		double maxLabel = 0.0;
-		int maxCount = -1;
-		
-		//Count majority label and count
-		for( Double key: counter.keySet() ){
-			if( counter.get(key) > maxCount ){
-				maxCount = counter.get(key);
-				maxLabel = key;
+		//Count the examples of each class with a non-zero value for each feature
+		int row = 0;
+		for(Example e:data.getData()){
+			int classId = classIds[row++];
+			classCounts[classId]++;
+			
+			for( int i = 0; i < e.getNumFeatures(); i++ ){
+				int[] counts = rightCounts.get(e.getFeatureIndexAt(i));
+				
+				if( counts != null && e.getFeatureValueAt(i) != DecisionTreeNode.LEFT_BRANCH ){
+					counts[classId]++;
+				}
 			}
 		}
 		
-		//Return majority information (label, count, confidence)
-		return new DataMajority(maxLabel, maxCount, ((double)maxCount)/data.size());
-	}
-	
-	/**
-	 * Split the data based on featureIndex
-	 * 
-	 * @param data the data to be split
-	 * @param featureIndex the feature to split on
-	 * @return the split of the data.  Entry 0 is the left branch data and entry 1 the right branch data.
-	 */
-	private ArrayList<Example>[] splitData(ArrayList<Example> data, int featureIndex){
-		ArrayList<Example>[] splits = new ArrayList[2];
-		splits[0] = new ArrayList<Example>();
-		splits[1] = new ArrayList<Example>();
-		
-		// split the data based on this feature
-		for( Example d: data){
-			double value = d.getFeature(featureIndex);
+		//Predict the majority label on each side, as in averageTrainingError
+		HashMap<Integer, Double> errors = new HashMap<Integer, Double>();
+		for(Map.Entry<Integer, int[]> f:rightCounts.entrySet()){
+			int leftCount = 0;
+			int rightCount = 0;
 			
-			if( value == DecisionTreeNode.LEFT_BRANCH ){
-				splits[0].add(d);
-			}else{
-				splits[1].add(d);
+			for( int classId = 0; classId < numClasses; classId++ ){
+				int right = f.getValue()[classId];
+				leftCount = Math.max(leftCount, classCounts[classId] - right);
+				rightCount = Math.max(rightCount, right);
 			}
+			
+			double accuracy = (leftCount+rightCount)/(double)row;
+			errors.put(f.getKey(), 1-accuracy);
 		}
 		
-		return splits;
-	}
-	
-	/**
-	 * Class for representing information about the majority labels of a set of data
-	 * 
-	 * @author plittle
-	 *
-	 */
-	private class DataMajority{
-		
-		//Stored information
-		public double majorityLabel;
-		public int majorityCount;
-		public double confidence;
-		
-		public DataMajority(double majorityLabel, int majorityCount, double confidence){
-			this.majorityLabel = majorityLabel;
-			this.majorityCount = majorityCount;
-			this.confidence = confidence;
-		}
+		return errors;
 	}
 
 
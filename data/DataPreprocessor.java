@@ -1,8 +1,5 @@
 package ml.data;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-
 /**
  * Interface defining the data preprocessing
  * 
@@ -31,26 +28,4 @@ public class DataPreprocessor {
 		return null;
 	}
 	
-	/**
-	 * Returns a new dataset from the examples, using only the usable features
-	 * 
-	 * @param examples - the examples to construct a new dataset from
-	 * @param usableFeatures - the features to use in the new dataset
-	 * @param unwantedFeatures - the features to remove from the old dataset
-	 * @return a copy of the dataset with the specified features removed
-	 */
-	protected DataSet returnCopyWithFeatures(ArrayList<Example> examples, HashMap<Integer,String> usableFeatures, ArrayList<Integer> unwantedFeatures){
-		DataSet newData = new DataSet(usableFeatures);
-		//remove unwanted features
-		Example newExample = null;
-		for(Example e:examples){
-			newExample = new Example(e);
-			for(Integer f: unwantedFeatures){
-				newExample.getFeatureSet().remove(f);
-			}
-			newData.addData(newExample);
-		}
-		return newData;
-	}
-	
 }
\ No newline at end of file
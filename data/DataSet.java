@@ -3,14 +3,19 @@ package ml.data;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A collections of examples representing an entire data set.
@@ -20,8 +25,8 @@ import java.util.Set;
  * 
  * @author dkauchak
  */
-public class DataSet {
-	private ArrayList<Example> data = new ArrayList<Example>(); // the data/examples in this data set
+public class DataSet implements Iterable<Example> {
+	private List<Example> data = new ArrayList<Example>(); // the data/examples in this data set
 	// the mapping from feature indices to the name of the feature
 	private HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
 	private HashSet<Double> labels = new HashSet<Double>();
@@ -29,9 +34,44 @@ public class DataSet {
 	// some constants for different file types
 	public static final int CSVFILE = 0;
 	public static final int TEXTFILE = 1;
+	public static final int BINARYFILE = 2; // see BinaryDataFile
+	public static final int HASHED_TEXTFILE = 3; // a TEXTFILE with the words hashed into features
 	
 	private int featureIndex;
 	private int biasFeature = -1;
+	
+	private static boolean useCache = true;
+	
+	// the number of features the words of a HASHED_TEXTFILE are hashed into
+	private static int numHashBuckets = 1 << 18;
+	private int hashBuckets; // numHashBuckets when this data set was read (0 if not hashed)
+	
+	// column-major copy of the data for dense data sets (e.g. CSV files), built on demand
+	private ColumnarData columns;
+	private Boolean dense;
+	
+	// the labels encoded as class ids 0 to numClasses-1, built on demand
+	private double[] classLabels; // classLabels[classId], in increasing order
+	private int[] classIds; // classIds[row]
+	
+	// which rows have non-zero features and which have each label, as bits, built on demand
+	private BitColumnData bitColumns;
+	
+	// row-major copy of the features of dense data sets, built on demand
+	private DenseMatrix denseMatrix;
+	
+	// the features quantized into bins, built on demand
+	private QuantizedData quantized;
+	private int quantizedBins; // the maxBins quantized was built with
+	
+	// for views (see subset and project), the examples belong to another data set
+	private boolean sharedData = false;
+	private long[] featureMask; // the features of a projection, as bits (null if not a projection)
+	
+	// for streaming data sets, the file the examples are read from each time
+	private String streamFile;
+	private int streamType;
+	private int streamSize;
 
 	/**
 	 * Create a new data set.  
@@ -40,41 +80,250 @@ public class DataSet {
 	 * @param fileType what type of file, using the class defined constants (e.g. CSVFILE)
 	 */
 	public DataSet(String filename, int fileType){
-		if( fileType == CSVFILE ){
-			// figure out how many columns there are then call
+		hashBuckets = fileType == HASHED_TEXTFILE ? numHashBuckets : 0;
+		
+		if( filename == null ){
+			// a streaming data set, which is read later
+		}else if( fileType == BINARYFILE ){
 			try {
-				BufferedReader in = new BufferedReader(new FileReader(filename));
-
-				// ignore any lines at the beginning that start with #
-				String line = in.readLine();
-
-				while( line.startsWith("#")){
-					line = in.readLine();
-				}
-				
-				// parse the headers
-				String[] headers = line.split(",");
-				int labelIndex = headers.length-1;					
-				featureIndex = 0;
-					
-				for( int i = 0; i < headers.length; i++ ){
-					if( i != labelIndex ){
-						featureMap.put(featureIndex, headers[i]);
-						featureIndex++;
-					}
-				}
-					
-				CSVDataReader reader = new CSVDataReader(in, labelIndex);
-				initialize(reader);
+				// the examples are served straight from the memory mapped file
+				initialize(BinaryDataFile.map(filename));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}else if( useCache && loadCache(filename, fileType) ){
+			// nothing to parse
+		}else if( fileType == CSVFILE ){
+			try {
+				// parse the headers and then the examples straight into columns,
+				// splitting large files up across all of the cores
+				ByteCSVDataReader reader = new ByteCSVDataReader(filename);
+				featureMap = reader.getFeatureMap();
+				featureIndex = featureMap.size();
+				initialize(reader.readParallel(ForkJoinPool.commonPool()));
+				saveCache(filename, fileType);
 			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
 			}
 		}else if( fileType == TEXTFILE ){
-			TextDataReader reader = new TextDataReader(filename);
+			try {
+				// tokenize the lines across all of the cores
+				ParallelTextDataReader reader = new ParallelTextDataReader(filename);
+				initialize(reader.read(ForkJoinPool.commonPool()).iterator());
+				featureMap = reader.getFeatureMap();
+				featureIndex = numTextFeatures();
+				saveCache(filename, fileType);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}else if( fileType == HASHED_TEXTFILE ){
+			TextDataReader reader = new TextDataReader(filename, hashBuckets);
 			initialize(reader);
 			featureMap = reader.getFeatureMap();
+			featureIndex = numTextFeatures();
+			saveCache(filename, fileType);
+		}
+	}
+	
+	/**
+	 * Create a new data set that reads its examples from the file each time it's
+	 * iterated over rather than keeping them in memory.  This allows training on
+	 * data sets that don't fit in memory, but the examples are only available by
+	 * iterating over the data set (in the order of the file).  getData and the
+	 * other methods that need every example at once (e.g. getRow, split and
+	 * getClassIdColumn) throw a RuntimeException.
+	 * 
+	 * The file is read once here to find the features and labels.
+	 * 
+	 * @param filename the location of the file
+	 * @param fileType CSVFILE, TEXTFILE or HASHED_TEXTFILE (BINARYFILEs are always read from disk on demand)
+	 * @param streaming whether or not to stream the examples
+	 */
+	public DataSet(String filename, int fileType, boolean streaming){
+		this(streaming && fileType != BINARYFILE ? null : filename, fileType);
+		
+		if( streaming && fileType != BINARYFILE ){
+			streamFile = filename;
+			streamType = fileType;
+			
+			Iterator<Example> reader = openStream(featureMap);
+			
+			while( reader.hasNext() ){
+				labels.add(reader.next().getLabel());
+				streamSize++;
+			}
+			
+			if( fileType == TEXTFILE || fileType == HASHED_TEXTFILE ){
+				featureMap = ((TextDataReader)reader).getFeatureMap();
+			}
+			
+			featureIndex = numTextFeatures();
+		}
+	}
+	
+	/**
+	 * @return whether or not this data set streams its examples from a file
+	 */
+	public boolean isStreaming(){
+		return streamFile != null;
+	}
+	
+	/**
+	 * Iterate over the examples in this data set.  For streaming data sets each
+	 * call reads the file again from the beginning.
+	 * 
+	 * @return an iterator over the examples
+	 */
+	@Override
+	public Iterator<Example> iterator(){
+		if( !isStreaming() ){
+			return data.iterator();
 		}
+		
+		return openStream(null);
+	}
+	
+	/**
+	 * Start reading the examples of a streaming data set from the beginning
+	 * 
+	 * @param headers if not null, the feature names from a CSV header are added to this
+	 * @return a reader over the examples in the file
+	 */
+	private Iterator<Example> openStream(HashMap<Integer, String> headers){
+		if( streamType == TEXTFILE || streamType == HASHED_TEXTFILE ){
+			return new TextDataReader(streamFile, hashBuckets);
+		}
+		
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(streamFile));
+			
+			// ignore any lines at the beginning that start with #
+			String line = in.readLine();
+			
+			while( line.startsWith("#")){
+				line = in.readLine();
+			}
+			
+			// parse the headers
+			String[] names = line.split(",");
+			int labelIndex = names.length-1;
+			
+			for( int i = 0; headers != null && i < labelIndex; i++ ){
+				headers.put(i, names[i]);
+			}
+			
+			return new CSVDataReader(in, labelIndex);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Set the number of features the words of HASHED_TEXTFILEs are hashed into
+	 * (2^18 by default).  More buckets means fewer words share a feature, but
+	 * more memory for classifiers that keep a weight per feature.  This only
+	 * affects data sets created afterwards.
+	 * 
+	 * @param numBuckets
+	 */
+	public static void setNumHashBuckets(int numBuckets){
+		if( numBuckets <= 0 ){
+			throw new IllegalArgumentException("the number of hash buckets must be positive: " + numBuckets);
+		}
+		
+		numHashBuckets = numBuckets;
+	}
+	
+	/**
+	 * @return one more than the largest feature index a CSV or text file can use
+	 */
+	private int numTextFeatures(){
+		// with hashing, any bucket can show up (e.g. in test data) even if it wasn't seen here
+		return hashBuckets > 0 ? hashBuckets : featureMap.size();
+	}
+	
+	/**
+	 * Turn the cache of parsed CSV and text files on or off (it's on by default).
+	 * When on, the first time a file is parsed a binary copy of the data set is
+	 * saved next to it (with .cache added to the name) and later loads of the
+	 * unchanged file just read the copy.
+	 * 
+	 * @param cache whether or not to use the cache
+	 */
+	public static void setUseCache(boolean cache){
+		useCache = cache;
+	}
+	
+	/**
+	 * Load this data set from the cache for filename if it's up to date
+	 * 
+	 * @param filename
+	 * @param fileType
+	 * @return whether or not the data set was loaded
+	 */
+	private boolean loadCache(String filename, int fileType){
+		BinaryDataFile.MappedExamples cached = BinaryDataFile.mapCache(filename, fileType, hashBuckets);
+		
+		if( cached == null ){
+			return false;
+		}
+		
+		// copy the examples onto the heap (a single pass over the file) so that
+		// this data set behaves just like one that was parsed
+		initialize(cached);
+		data = new ArrayList<Example>(cached);
+		featureIndex = Math.max(featureIndex, numTextFeatures());
+		dense = fileType == CSVFILE ? true : null;
+		return true;
+	}
+	
+	/**
+	 * Save the cache for filename.  Failing to write the cache (e.g. because
+	 * the directory is read-only) is not an error.
+	 * 
+	 * @param filename
+	 * @param fileType
+	 */
+	private void saveCache(String filename, int fileType){
+		if( useCache ){
+			try {
+				BinaryDataFile.writeCache(this, filename, fileType, hashBuckets);
+			} catch (IOException e) {
+				System.err.println("Warning: couldn't cache " + filename + ": " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Populate this dataset from a memory mapped binary file
+	 * 
+	 * @param mapped
+	 */
+	private void initialize(BinaryDataFile.MappedExamples mapped){
+		data = mapped;
+		labels = mapped.getLabels();
+		featureMap = mapped.getFeatureMap();
+		featureIndex = mapped.getNumFeatureIndices();
+	}
+	
+	/**
+	 * Populate this dataset from data that has been read into columns.
+	 * 
+	 * @param columnData
+	 */
+	private void initialize(ColumnarData columnData){
+		// the examples are built from the columns when they're asked for (like
+		// the examples of a BINARYFILE), so the data is only stored once
+		data = columnData.getRows();
+		
+		for( double label: columnData.getLabels() ){
+			labels.add(label);
+		}
+		
+		// every column is populated, so keep the columns we already have
+		columns = columnData;
+		dense = true;
 	}
 	
 	/**
@@ -88,6 +337,8 @@ public class DataSet {
 			data.add(next);
 			labels.add(next.getLabel());
 		}
+		
+		dataChanged();
 	}
 		
 	/**
@@ -122,11 +373,29 @@ public class DataSet {
 	}	
 	
 	/**
-	 * Get the examples associated with this data set
+	 * Get the examples associated with this data set.  For data sets read from
+	 * a CSV file or opened from a BINARYFILE the list is read-only and each get
+	 * builds the example from the columns (see ColumnarData.getRows) or decodes
+	 * it from the memory mapped file.
 	 * 
 	 * @return the examples
 	 */
-	public ArrayList<Example> getData(){
+	public List<Example> getData(){
+		return examples("getData");
+	}
+	
+	/**
+	 * Get the examples for a method that needs all of them at once, which a
+	 * streaming data set doesn't have
+	 * 
+	 * @param method the name of the method, for the error
+	 * @return the examples
+	 */
+	private List<Example> examples(String method){
+		if( isStreaming() ){
+			throw new RuntimeException("Called DataSet." + method + " on a streaming data set; iterate over it instead");
+		}
+		
 		return data;
 	}
 	
@@ -139,11 +408,15 @@ public class DataSet {
 	 * 
 	 * @param addMe
 	 */
-	public void addData(ArrayList<Example> addMe){
+	public void addData(List<Example> addMe){
+		copyView();
+		
 		for( Example e: addMe ){
 			data.add(e);
 			labels.add(e.getLabel());
 		}
+		
+		dataChanged();
 	}
 
 	/**
@@ -156,8 +429,264 @@ public class DataSet {
 	 * @param addMe
 	 */
 	public void addData(Example e){
+		copyView();
 		data.add(e);
 		labels.add(e.getLabel());
+		dataChanged();
+	}
+	
+	/**
+	 * If this data set shares its examples with another (see subset and project)
+	 * or its examples are read-only (see getData), give it its own list of the
+	 * examples so that it can be added to
+	 */
+	private void copyView(){
+		if( sharedData || !(data instanceof ArrayList) ){
+			data = new ArrayList<Example>(data);
+			sharedData = false;
+		}
+	}
+	
+	/**
+	 * Get the number of examples in this data set
+	 * 
+	 * @return the number of examples
+	 */
+	public int size(){
+		return isStreaming() ? streamSize : data.size();
+	}
+	
+	/**
+	 * Get a single example (row) of this data set
+	 * 
+	 * @param row
+	 * @return the example at position row in getData()
+	 */
+	public Example getRow(int row){
+		return examples("getRow").get(row);
+	}
+	
+	/**
+	 * Whether every example in this data set has a value for every feature
+	 * (e.g. data read from a CSV file).  Dense data sets keep a column-major
+	 * copy of the data, so getColumn is just an array lookup.
+	 * 
+	 * @return whether or not the data set is dense
+	 */
+	public boolean isDense(){
+		List<Example> data = examples("isDense");
+		
+		if( dense == null ){
+			boolean allFeatures = true;
+			int numFeatures = featureMap.size();
+			
+			for( int i = 0; i < data.size() && allFeatures; i++ ){
+				allFeatures = data.get(i).getNumFeatures() >= numFeatures;
+			}
+			
+			dense = allFeatures;
+		}
+		
+		return dense;
+	}
+	
+	/**
+	 * Get the value of featureIndex for every example, in the same order as
+	 * getData().  For dense data sets this is the backing storage and should
+	 * NOT be modified; for sparse data sets a new array is built on each call.
+	 * 
+	 * @param featureIndex
+	 * @return the column of values for featureIndex
+	 */
+	public double[] getColumn(int featureIndex){
+		examples("getColumn");
+		
+		if( isDense() && featureIndex < numFeatureIndices() ){
+			double[] column = getColumnarData().getColumn(featureIndex);
+			
+			if( column != null ){
+				return column;
+			}
+		}
+		
+		double[] column = new double[data.size()];
+		
+		for( int row = 0; row < column.length; row++ ){
+			column[row] = data.get(row).getFeature(featureIndex);
+		}
+		
+		return column;
+	}
+	
+	/**
+	 * Get the label of every example, in the same order as getData().  The
+	 * array should NOT be modified.
+	 * 
+	 * @return the column of labels
+	 */
+	public double[] getLabelColumn(){
+		examples("getLabelColumn");
+		
+		if( isDense() ){
+			return getColumnarData().getLabels();
+		}
+		
+		double[] column = new double[data.size()];
+		
+		for( int row = 0; row < column.length; row++ ){
+			column[row] = data.get(row).getLabel();
+		}
+		
+		return column;
+	}
+	
+	/**
+	 * Get the distinct labels in this data set in increasing order.  The
+	 * position of a label in this array is its class id, so counts of labels
+	 * can be kept in an int[] indexed by class id.  The array should NOT be
+	 * modified.
+	 * 
+	 * @return the label for each class id
+	 */
+	public double[] getClassLabels(){
+		if( classLabels == null ){
+			classLabels = new double[labels.size()];
+			int i = 0;
+			
+			for( double label: labels ){
+				classLabels[i++] = label;
+			}
+			
+			Arrays.sort(classLabels);
+		}
+		
+		return classLabels;
+	}
+	
+	/**
+	 * @return the number of different labels in this data set
+	 */
+	public int getNumClasses(){
+		return getClassLabels().length;
+	}
+	
+	/**
+	 * Get the class id of a label (see getClassLabels)
+	 * 
+	 * @param label
+	 * @return the class id of label or -1 if no example in this data set has that label
+	 */
+	public int getClassId(double label){
+		int classId = Arrays.binarySearch(getClassLabels(), label);
+		return classId >= 0 ? classId : -1;
+	}
+	
+	/**
+	 * Get the class id of the label of every example, in the same order as
+	 * getData().  The array should NOT be modified.
+	 * 
+	 * @return the column of class ids
+	 */
+	public int[] getClassIdColumn(){
+		examples("getClassIdColumn");
+		
+		if( classIds == null ){
+			double[] labelColumn = getLabelColumn();
+			double[] table = getClassLabels();
+			classIds = new int[labelColumn.length];
+			
+			for( int row = 0; row < labelColumn.length; row++ ){
+				classIds[row] = Arrays.binarySearch(table, labelColumn[row]);
+			}
+		}
+		
+		return classIds;
+	}
+	
+	/**
+	 * Get which rows have a non-zero value for each feature and which rows have
+	 * each label, packed into bits (see BitColumnData).  This is built the first
+	 * time it's asked for and takes a bit per feature per row, so it's meant for
+	 * dense data sets (for sparse ones it can be far bigger than the examples).
+	 * 
+	 * @return the bit columns
+	 */
+	public BitColumnData getBitColumns(){
+		if( bitColumns == null ){
+			bitColumns = new BitColumnData(examples("getBitColumns"), featureMap.keySet(), numFeatureIndices(),
+					getClassIdColumn(), getNumClasses());
+		}
+		
+		return bitColumns;
+	}
+	
+	/**
+	 * Get a row-major copy of the features of this data set (see DenseMatrix).
+	 * This is meant for dense data sets since every row has room for every
+	 * feature.  The copy is kept until the examples change.  It's in addition to
+	 * the examples, which keep their values as doubles, so storing it as floats
+	 * halves the size of the copy but doesn't shrink the data set itself.
+	 * 
+	 * @param useFloats whether to store the values as floats rather than doubles
+	 * @return the matrix
+	 */
+	public DenseMatrix getDenseMatrix(boolean useFloats){
+		if( denseMatrix == null || denseMatrix.usesFloats() != useFloats ){
+			denseMatrix = new DenseMatrix(examples("getDenseMatrix"), featureMap.keySet(), useFloats);
+		}
+		
+		return denseMatrix;
+	}
+	
+	/**
+	 * Get the features of this data set quantized into at most maxBins bins
+	 * each (see QuantizedData), taking a byte per feature per row.  The bins
+	 * are kept until the examples change.
+	 * 
+	 * @param maxBins the most bins per feature (between 2 and QuantizedData.MAX_BINS)
+	 * @return the quantized features
+	 */
+	public QuantizedData getQuantizedData(int maxBins){
+		if( quantized == null || quantizedBins != maxBins ){
+			quantized = new QuantizedData(examples("getQuantizedData"), featureMap.keySet(), numFeatureIndices(), maxBins,
+					getClassIdColumn(), getNumClasses());
+			quantizedBins = maxBins;
+		}
+		
+		return quantized;
+	}
+	
+	/**
+	 * Get the column-major copy of this data set, building it if necessary.
+	 * 
+	 * @return the columns
+	 */
+	private ColumnarData getColumnarData(){
+		if( columns == null ){
+			columns = new ColumnarData(data, featureMap.keySet(), numFeatureIndices());
+		}
+		
+		return columns;
+	}
+	
+	/**
+	 * @return one more than the largest feature index in this data set
+	 */
+	private int numFeatureIndices(){
+		return Math.max(featureIndex, biasFeature+1);
+	}
+	
+	/**
+	 * Throw away anything derived from the examples after they change
+	 */
+	private void dataChanged(){
+		columns = null;
+		dense = null;
+		classLabels = null;
+		classIds = null;
+		bitColumns = null;
+		denseMatrix = null;
+		quantized = null;
 	}
 	
 	/**
@@ -188,30 +717,195 @@ public class DataSet {
 	 * @return a split of the data
 	 */
 	public DataSetSplit split(double fraction){
-		ArrayList<Example> newdata = (ArrayList<Example>)data.clone();
-		Collections.shuffle(newdata, new Random(System.nanoTime()));
+		int[] rows = shuffledRows(examples("split").size());
+		int trainSize = (int)Math.floor(rows.length*fraction);
 		
-		ArrayList<Example> train = new ArrayList<Example>();
-		ArrayList<Example> test = new ArrayList<Example>();
+		DataSet dTrain = subset(Arrays.copyOfRange(rows, 0, trainSize));
+		DataSet dTest = subset(Arrays.copyOfRange(rows, trainSize, rows.length));
 		
-		int trainSize = (int)Math.floor(data.size()*fraction);
+		return new DataSetSplit(dTrain, dTest);
+	}	
+	
+	/**
+	 * Get a view of some of the rows of this data set.  No examples are copied:
+	 * the view keeps the row numbers and gets the examples from this data set
+	 * (so changing an example changes it in both).  The view also shares the
+	 * feature map with this data set.
+	 * 
+	 * @param rows the rows of this data set (see getData) to include, in order
+	 * @return a data set of just those rows
+	 */
+	public DataSet subset(int[] rows){
+		examples("subset");
+		return new DataSet(this, rows);
+	}
+	
+	/**
+	 * Create a view of some of the rows of parent (see subset)
+	 * 
+	 * @param parent
+	 * @param rows
+	 */
+	private DataSet(DataSet parent, int[] rows){
+		featureMap = parent.featureMap;
+		featureIndex = parent.numFeatureIndices();
+		featureMask = parent.featureMask;
+		sharedData = true;
+		
+		List<Example> base = parent.data;
+		int[] baseRows = rows;
 		
-		for( int i = 0; i < newdata.size(); i++ ){
-			if( i < trainSize ){
-				train.add(newdata.get(i));
-			}else{
-				test.add(newdata.get(i));
+		if( parent.data instanceof RowView ){
+			// point straight at the original rows rather than making a chain of views
+			RowView parentView = (RowView)parent.data;
+			base = parentView.base;
+			baseRows = new int[rows.length];
+			
+			for( int i = 0; i < rows.length; i++ ){
+				baseRows[i] = parentView.rows[rows[i]];
 			}
 		}
 		
-		DataSet dTrain = new DataSet(featureMap);
-		dTrain.addData(train);
+		data = new RowView(base, baseRows);
 		
-		DataSet dTest = new DataSet(featureMap);
-		dTest.addData(test);
-
-		return new DataSetSplit(dTrain, dTest);
-	}	
+		// just the labels of these rows, without building anything the parent hasn't already
+		if( parent.classIds != null ){
+			// found through the class ids so nothing is boxed
+			double[] parentLabels = parent.getClassLabels();
+			boolean[] hasLabel = new boolean[parentLabels.length];
+			
+			for( int row: rows ){
+				hasLabel[parent.classIds[row]] = true;
+			}
+			
+			for( int classId = 0; classId < hasLabel.length; classId++ ){
+				if( hasLabel[classId] ){
+					labels.add(parentLabels[classId]);
+				}
+			}
+		}else{
+			double lastLabel = Double.NaN;
+			
+			for( int i = 0; i < rows.length; i++ ){
+				double label;
+				
+				if( parent.columns != null ){
+					label = parent.columns.getLabels()[rows[i]];
+				}else if( base instanceof BinaryDataFile.MappedExamples ){
+					// straight from the file rather than decoding the whole row
+					label = ((BinaryDataFile.MappedExamples)base).getLabel(baseRows[i]);
+				}else{
+					label = base.get(baseRows[i]).getLabel();
+				}
+				
+				// labels usually repeat, so skip boxing the same one again
+				if( i == 0 || Double.compare(label, lastLabel) != 0 ){
+					labels.add(label);
+					lastLabel = label;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Get a view of this data set with only some of its features.  Nothing is
+	 * copied but the feature map: the view has the same examples (which still
+	 * have all of their features) and it's up to the classifiers to only look
+	 * at the features in getAllFeatureIndices (or hasFeature).  Anything already
+	 * derived from the examples (e.g. the columns) is shared with this data set.
+	 * Adding data to either one copies its list of examples first, so the
+	 * other doesn't change.
+	 * 
+	 * @param features the features to keep and their names
+	 * @return a data set with just those features
+	 */
+	public DataSet project(HashMap<Integer, String> features){
+		DataSet projected = new DataSet(new HashMap<Integer, String>());
+		projected.featureIndex = numFeatureIndices();
+		projected.biasFeature = biasFeature;
+		projected.featureMask = new long[(numFeatureIndices() + 63) >>> 6];
+		
+		for( Map.Entry<Integer, String> feature: features.entrySet() ){
+			int f = feature.getKey();
+			
+			if( hasFeature(f) ){
+				projected.featureMap.put(f, feature.getValue());
+				
+				if( f >= 0 ){
+					projected.featureMask[f >>> 6] |= 1L << f;
+				}
+			}
+		}
+		
+		// both sets copy the examples before either adds to them (see copyView)
+		projected.data = data;
+		projected.sharedData = true;
+		sharedData = true;
+		projected.labels = new HashSet<Double>(labels);
+		projected.columns = columns;
+		projected.dense = dense;
+		projected.classLabels = classLabels;
+		projected.classIds = classIds;
+		projected.bitColumns = bitColumns;
+		projected.quantized = quantized;
+		projected.quantizedBins = quantizedBins;
+		
+		projected.streamFile = streamFile;
+		projected.streamType = streamType;
+		projected.hashBuckets = hashBuckets;
+		projected.streamSize = streamSize;
+		
+		return projected;
+	}
+	
+	/**
+	 * Check whether a feature is part of this data set.  For projections (see
+	 * project) this is just a bit lookup.
+	 * 
+	 * @param featureIndex
+	 * @return whether or not featureIndex is one of this data set's features
+	 */
+	public boolean hasFeature(int featureIndex){
+		if( featureMask == null || featureIndex < 0 ){
+			return featureMap.containsKey(featureIndex);
+		}
+		
+		return (featureIndex >>> 6) < featureMask.length && (featureMask[featureIndex >>> 6] & (1L << featureIndex)) != 0;
+	}
+	
+	/**
+	 * @param size
+	 * @return the numbers 0 to size-1 in a random order
+	 */
+	static int[] shuffledRows(int size){
+		int[] rows = new int[size];
+		
+		for( int i = 0; i < size; i++ ){
+			rows[i] = i;
+		}
+		
+		Random rand = new Random(System.nanoTime());
+		
+		for( int i = size-1; i > 0; i-- ){
+			int j = rand.nextInt(i+1);
+			int temp = rows[i];
+			rows[i] = rows[j];
+			rows[j] = temp;
+		}
+		
+		return rows;
+	}
+	
+	/**
+	 * Write this data set to filename in the binary format so that it can be
+	 * memory mapped later with new DataSet(filename, BINARYFILE)
+	 * 
+	 * @param filename
+	 * @throws IOException if the file couldn't be written (it may then be incomplete)
+	 */
+	public void writeBinary(String filename) throws IOException{
+		BinaryDataFile.write(this, filename);
+	}
 	
 	/**
 	 * Get a cross-validation of this data set with num splits.  The
@@ -221,6 +915,7 @@ public class DataSet {
 	 * @return
 	 */
 	public CrossValidationSet getCrossValidationSet(int num){
+		examples("getCrossValidationSet");
 		return new CrossValidationSet(this, num);
 	}
 	
@@ -233,6 +928,7 @@ public class DataSet {
 	 * @return
 	 */
 	public CrossValidationSet getRandomCrossValidationSet(int num){
+		examples("getRandomCrossValidationSet");
 		return new CrossValidationSet(this, num, true);
 	}
 	
@@ -285,4 +981,30 @@ public class DataSet {
 		
 		return biased;
 	}
+	
+	/**
+	 * Read-only list of some of the rows of another list of examples
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private static class RowView extends AbstractList<Example> implements RandomAccess{
+		private List<Example> base;
+		private int[] rows;
+		
+		public RowView(List<Example> base, int[] rows){
+			this.base = base;
+			this.rows = rows;
+		}
+		
+		@Override
+		public Example get(int index) {
+			return base.get(rows[index]);
+		}
+		
+		@Override
+		public int size() {
+			return rows.length;
+		}
+	}
 }
@@ -0,0 +1,209 @@
+package ml.data;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Row-major storage for a dense data set: the feature values of each example
+ * are stored one after another in a single primitive array, so comparing an
+ * example against every row (e.g. for k-nearest neighbors) is a linear sweep.
+ * 
+ * The values can be stored as doubles or, to halve the memory (and memory
+ * bandwidth) at the cost of precision, as floats.  In float mode, distances
+ * are also computed in floats.  Either way the matrix is a copy: the
+ * examples it was built from still hold their values as doubles, so float
+ * mode halves the size of the matrix (and the memory swept per query), not
+ * the memory of the data set.  Distances are computed with VectorKernels,
+ * so they use SIMD instructions when the Vector API is available.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class DenseMatrix {
+	private int numRows;
+	private int numColumns;
+	private int[] features; // features[column] is the feature index stored in that column
+	private double[] values; // values[row*numColumns + column], null in float mode
+	private float[] floatValues; // the same, but only in float mode
+	
+	/**
+	 * Copy the features of a list of examples into a matrix
+	 * 
+	 * @param rows the examples, one per row
+	 * @param features the features to store, which become the columns in increasing order
+	 * @param useFloats whether to store floats rather than doubles
+	 */
+	public DenseMatrix(List<Example> rows, Set<Integer> features, boolean useFloats){
+		numRows = rows.size();
+		numColumns = features.size();
+		this.features = new int[numColumns];
+		int column = 0;
+		
+		for( int f: features ){
+			this.features[column++] = f;
+		}
+		
+		Arrays.sort(this.features);
+		
+		// every value goes in one array, so fail here rather than wrapping around
+		// (every row*numColumns + column below is then in range too)
+		int numValues = Math.multiplyExact(numRows, numColumns);
+		
+		if( useFloats ){
+			floatValues = new float[numValues];
+		}else{
+			values = new double[numValues];
+		}
+		
+		for( int row = 0; row < numRows; row++ ){
+			Example e = rows.get(row);
+			int base = row*numColumns;
+			column = 0;
+			
+			// both the example and the columns are sorted by feature index, so merge them
+			for( int i = 0; i < e.getNumFeatures() && column < numColumns; i++ ){
+				int f = e.getFeatureIndexAt(i);
+				
+				while( column < numColumns && this.features[column] < f ){
+					column++;
+				}
+				
+				if( column < numColumns && this.features[column] == f ){
+					if( useFloats ){
+						floatValues[base + column] = (float)e.getFeatureValueAt(i);
+					}else{
+						values[base + column] = e.getFeatureValueAt(i);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of rows
+	 */
+	public int getNumRows(){
+		return numRows;
+	}
+	
+	/**
+	 * @return the number of columns (features)
+	 */
+	public int getNumColumns(){
+		return numColumns;
+	}
+	
+	/**
+	 * @param column
+	 * @return the feature index stored in column
+	 */
+	public int getFeature(int column){
+		return features[column];
+	}
+	
+	/**
+	 * @return whether or not the values are stored as floats
+	 */
+	public boolean usesFloats(){
+		return floatValues != null;
+	}
+	
+	/**
+	 * Get a single value
+	 * 
+	 * @param row
+	 * @param column
+	 * @return the value
+	 */
+	public double get(int row, int column){
+		return floatValues != null ? floatValues[row*numColumns + column] : values[row*numColumns + column];
+	}
+	
+	/**
+	 * Get the backing array of doubles (null in float mode), with row r in
+	 * positions r*getNumColumns() to (r+1)*getNumColumns()-1.  The array
+	 * should NOT be modified.
+	 * 
+	 * @return the values
+	 */
+	public double[] getValues(){
+		return values;
+	}
+	
+	/**
+	 * Get the backing array of floats (null if not in float mode), laid out
+	 * like getValues.  The array should NOT be modified.
+	 * 
+	 * @return the values
+	 */
+	public float[] getFloatValues(){
+		return floatValues;
+	}
+	
+	/**
+	 * Get the values of an example in the same column order as this matrix
+	 * 
+	 * @param e
+	 * @return the values of e for each column
+	 */
+	public double[] toVector(Example e){
+		double[] vector = new double[numColumns];
+		
+		for( int column = 0; column < numColumns; column++ ){
+			vector[column] = e.getFeature(features[column]);
+		}
+		
+		return vector;
+	}
+	
+	/**
+	 * Get the values of an example in the same column order as this matrix, as floats
+	 * 
+	 * @param e
+	 * @return the values of e for each column
+	 */
+	public float[] toFloatVector(Example e){
+		float[] vector = new float[numColumns];
+		
+		for( int column = 0; column < numColumns; column++ ){
+			vector[column] = (float)e.getFeature(features[column]);
+		}
+		
+		return vector;
+	}
+	
+	/**
+	 * @param row
+	 * @param vector the values of an example (see toVector)
+	 * @return the squared euclidean distance between the row and the example
+	 */
+	public double squaredDistance(int row, double[] vector){
+		return VectorKernels.get().squaredDistance(vector, 0, values, row*numColumns, numColumns);
+	}
+	
+	/**
+	 * @param row
+	 * @param otherRow
+	 * @return the squared euclidean distance between two rows (computed in floats in float mode)
+	 */
+	public double squaredDistance(int row, int otherRow){
+		if( floatValues != null ){
+			return VectorKernels.get().squaredDistance(floatValues, row*numColumns, floatValues, otherRow*numColumns, numColumns);
+		}
+		
+		return VectorKernels.get().squaredDistance(values, row*numColumns, values, otherRow*numColumns, numColumns);
+	}
+	
+	/**
+	 * @param row
+	 * @param vector the values of an example (see toFloatVector)
+	 * @return the squared euclidean distance between the row and the example, computed in floats
+	 */
+	public float squaredDistance(int row, float[] vector){
+		return VectorKernels.get().squaredDistance(vector, 0, floatValues, row*numColumns, numColumns);
+	}
+}
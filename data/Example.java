@@ -1,9 +1,10 @@
 package ml.data;
 
-import java.util.Collections;
-import java.util.ArrayList;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -19,17 +20,43 @@ public class Example {
 	// Rather than keeping the name of the feature (i.e. the header information), we'll
 	// index the features starting at 0.  The DataSet class will keep a mapping from
 	// feature index to the actual name.
-	private HashMap<Integer, Double> sparseData;
+	//
+	// The features are stored as two parallel arrays sorted by feature index, so lookups
+	// are a binary search and scans walk primitive arrays (no boxing, no hashing).
+	private int[] indices;
+	private double[] values;
+	private int numFeatures; // how many entries of indices/values are in use
 	private double label;  // the label (assuming it has one)
 	
+	private static final int INITIAL_CAPACITY = 8;
+	
 	public Example(){
-		sparseData = new HashMap<Integer, Double>();
+		indices = new int[INITIAL_CAPACITY];
+		values = new double[INITIAL_CAPACITY];
+	}
+	
+	/**
+	 * Create an example that takes ownership of the given arrays.  indices must
+	 * be sorted in increasing order.
+	 * 
+	 * @param indices the feature indices
+	 * @param values the feature values
+	 * @param numFeatures how many entries of indices/values are used
+	 * @param label the label
+	 */
+	Example(int[] indices, double[] values, int numFeatures, double label){
+		this.indices = indices;
+		this.values = values;
+		this.numFeatures = numFeatures;
+		this.label = label;
 	}
 	
 	public Example(Example e){
 		// copy everything
 		label = e.label;
-		sparseData = new HashMap<Integer,Double>(e.sparseData);
+		numFeatures = e.numFeatures;
+		indices = Arrays.copyOf(e.indices, Math.max(numFeatures, 1));
+		values = Arrays.copyOf(e.values, Math.max(numFeatures, 1));
 	}
 	
 	/**
@@ -39,9 +66,21 @@ public class Example {
 	 * @param value  the value to be added
 	 */
 	public void addFeature(int featureNum, double value){
-		sparseData.put(featureNum, value);
+		// features are almost always added in increasing order (e.g. when reading
+		// a CSV file), so check for an append before searching
+		if( numFeatures == 0 || indices[numFeatures-1] < featureNum ){
+			insertAt(numFeatures, featureNum, value);
+		}else{
+			int pos = find(featureNum);
+			
+			if( pos >= 0 ){
+				values[pos] = value;
+			}else{
+				insertAt(-(pos+1), featureNum, value);
+			}
+		}
 	}
-		
+	
 	/**
 	 * Get the value associated with this feature.
 	 * 
@@ -49,7 +88,8 @@ public class Example {
 	 * @return the value for featureNum for this example
 	 */
 	public double getFeature(int featureNum){
-		return sparseData.containsKey(featureNum) ? sparseData.get(featureNum) : 0.0;
+		int pos = find(featureNum);
+		return pos >= 0 ? values[pos] : 0.0;
 	}
 	
 	/**
@@ -59,16 +99,73 @@ public class Example {
 	 * @param value
 	 */
 	public void setFeature(int featureNum, double value){
-		sparseData.put(featureNum, value);
+		addFeature(featureNum, value);
+	}
+	
+	/**
+	 * Remove a feature from this example.
+	 * 
+	 * @param featureNum
+	 * @return whether or not the example had the feature
+	 */
+	public boolean removeFeature(int featureNum){
+		int pos = find(featureNum);
+		
+		if( pos < 0 ){
+			return false;
+		}
+		
+		System.arraycopy(indices, pos+1, indices, pos, numFeatures-pos-1);
+		System.arraycopy(values, pos+1, values, pos, numFeatures-pos-1);
+		numFeatures--;
+		
+		return true;
 	}
 	
 	/**
-	 * Get all the features that this example has (indices).
+	 * Get all the features that this example has (indices).  The set is a
+	 * view backed by this example, so removing from it removes the feature.
 	 * 
 	 * @return the set of features
 	 */
 	public Set<Integer> getFeatureSet(){
-		return sparseData.keySet();
+		return new FeatureSet();
+	}
+	
+	/**
+	 * Get the number of features stored in this example.  Together with
+	 * getFeatureIndexAt and getFeatureValueAt this allows iterating over
+	 * the features without any boxing, e.g.
+	 * 
+	 * for( int i = 0; i < e.getNumFeatures(); i++ ){
+	 *     sum += w[e.getFeatureIndexAt(i)] * e.getFeatureValueAt(i);
+	 * }
+	 * 
+	 * @return the number of stored features
+	 */
+	public int getNumFeatures(){
+		return numFeatures;
+	}
+	
+	/**
+	 * Get the feature index stored at position pos.  Positions are ordered
+	 * by increasing feature index.
+	 * 
+	 * @param pos a position between 0 and getNumFeatures()-1
+	 * @return the feature index at that position
+	 */
+	public int getFeatureIndexAt(int pos){
+		return indices[pos];
+	}
+	
+	/**
+	 * Get the feature value stored at position pos.
+	 * 
+	 * @param pos a position between 0 and getNumFeatures()-1
+	 * @return the feature value at that position
+	 */
+	public double getFeatureValueAt(int pos){
+		return values[pos];
 	}
 	
 	/**
@@ -96,18 +193,26 @@ public class Example {
 	 * @return whether or not these examples have the same feature values
 	 */
 	public boolean equalFeatures(Example other){
-		return sparseData.equals(other.sparseData);
+		if( numFeatures != other.numFeatures ){
+			return false;
+		}
+		
+		for( int i = 0; i < numFeatures; i++ ){
+			if( indices[i] != other.indices[i] ||
+				Double.doubleToLongBits(values[i]) != Double.doubleToLongBits(other.values[i]) ){
+				return false;
+			}
+		}
+		
+		return true;
 	}
 	
 	public String toString(){
 		StringBuffer buffer = new StringBuffer();
 		buffer.append(label);
 		
-		ArrayList<Integer> indices = new ArrayList<Integer>(sparseData.keySet());
-		Collections.sort(indices);
-		
-		for( int featureIndex: indices){
-			buffer.append(" " + featureIndex + ":" + valueToString(sparseData.get(featureIndex)));
+		for( int i = 0; i < numFeatures; i++ ){
+			buffer.append(" " + indices[i] + ":" + valueToString(values[i]));
 		}
 		
 		return buffer.toString();
@@ -117,11 +222,8 @@ public class Example {
 		StringBuffer buffer = new StringBuffer();
 		buffer.append(label);
 		
-		ArrayList<Integer> indices = new ArrayList<Integer>(sparseData.keySet());
-		Collections.sort(indices);
-		
-		for( int featureIndex: indices){
-			buffer.append(" " + featureMap.get(featureIndex) + ":" + valueToString(sparseData.get(featureIndex)));
+		for( int i = 0; i < numFeatures; i++ ){
+			buffer.append(" " + featureMap.get(indices[i]) + ":" + valueToString(values[i]));
 		}
 		
 		return buffer.toString();
@@ -135,11 +237,8 @@ public class Example {
 	public String toCSVString(){
 		StringBuffer buffer = new StringBuffer();
 		
-		ArrayList<Integer> indices = new ArrayList<Integer>(sparseData.keySet());
-		Collections.sort(indices);
-		
-		for( int featureIndex: indices){
-			buffer.append(valueToString(sparseData.get(featureIndex)) + ",");
+		for( int i = 0; i < numFeatures; i++ ){
+			buffer.append(valueToString(values[i]) + ",");
 		}
 		
 		buffer.append( valueToString(label) );
@@ -160,4 +259,92 @@ public class Example {
 			return Double.toString(val);
 		}
 	}
+	
+	/**
+	 * Binary search for featureNum in the stored indices
+	 * 
+	 * @param featureNum
+	 * @return the position of featureNum if it's stored, otherwise (-(insertion point) - 1)
+	 */
+	private int find(int featureNum){
+		return Arrays.binarySearch(indices, 0, numFeatures, featureNum);
+	}
+	
+	/**
+	 * Insert a new feature at position pos, growing the arrays if needed
+	 * 
+	 * @param pos
+	 * @param featureNum
+	 * @param value
+	 */
+	private void insertAt(int pos, int featureNum, double value){
+		if( numFeatures == indices.length ){
+			int newCapacity = Math.max(INITIAL_CAPACITY, indices.length*2);
+			indices = Arrays.copyOf(indices, newCapacity);
+			values = Arrays.copyOf(values, newCapacity);
+		}
+		
+		System.arraycopy(indices, pos, indices, pos+1, numFeatures-pos);
+		System.arraycopy(values, pos, values, pos+1, numFeatures-pos);
+		indices[pos] = featureNum;
+		values[pos] = value;
+		numFeatures++;
+	}
+	
+	/**
+	 * Set view of the feature indices backed by the arrays of this example
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private class FeatureSet extends AbstractSet<Integer>{
+		@Override
+		public int size() {
+			return numFeatures;
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Integer && find((Integer)o) >= 0;
+		}
+		
+		@Override
+		public boolean remove(Object o) {
+			return o instanceof Integer && removeFeature((Integer)o);
+		}
+		
+		@Override
+		public Iterator<Integer> iterator() {
+			return new Iterator<Integer>(){
+				private int next = 0;
+				private boolean canRemove = false;
+				
+				@Override
+				public boolean hasNext() {
+					return next < numFeatures;
+				}
+				
+				@Override
+				public Integer next() {
+					if( !hasNext() ){
+						throw new NoSuchElementException();
+					}
+					
+					canRemove = true;
+					return indices[next++];
+				}
+				
+				@Override
+				public void remove() {
+					if( !canRemove ){
+						throw new IllegalStateException();
+					}
+					
+					canRemove = false;
+					next--;
+					removeFeature(indices[next]);
+				}
+			};
+		}
+	}
 }
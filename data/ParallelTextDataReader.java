@@ -0,0 +1,314 @@
+package ml.data;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ml.utils.HashMapCounter;
+
+/**
+ * Reads a text file (in the same format as TextDataReader) with the lines
+ * tokenized in parallel.  The words go into a shared concurrent vocabulary
+ * and are renumbered afterwards in the order TextDataReader would have seen
+ * them, so the examples and the feature map are exactly the same as reading
+ * the file with TextDataReader.
+ * 
+ * The file is read a batch of lines at a time, and each batch is tokenized
+ * on the pool while the following ones are read.  Only a few batches can be
+ * waiting at once, and a batch's lines are dropped once they're tokenized, so
+ * the whole text is never in memory (just the word ids and counts of every
+ * line, and then the examples built from them).
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class ParallelTextDataReader {
+	// the number of lines read and tokenized together
+	private static final int BATCH_SIZE = 4096;
+	
+	// how many batches can be waiting to be tokenized per thread of the pool
+	private static final int BATCHES_PER_THREAD = 2;
+	
+	// a word is first seen at (line << POSITION_BITS) + its position in the line's word
+	// counter, which is fine as long as no line has more than 2^24 different words
+	private static final int POSITION_BITS = 24;
+	
+	private String textFile;
+	private ConcurrentHashMap<String, VocabEntry> vocabulary;
+	private AtomicInteger nextId;
+	private String[] words; // words[featureIndex]
+	
+	private int[] remap; // remap[provisional id] = feature index
+	
+	/**
+	 * @param textFile the text file containing the examples
+	 */
+	public ParallelTextDataReader(String textFile){
+		this.textFile = textFile;
+	}
+	
+	/**
+	 * Read all of the examples, splitting the tokenizing up across the threads of pool
+	 * 
+	 * @param pool
+	 * @return the examples, in the order of the file
+	 * @throws IOException
+	 */
+	public List<Example> read(ForkJoinPool pool) throws IOException{
+		vocabulary = new ConcurrentHashMap<String, VocabEntry>();
+		nextId = new AtomicInteger();
+		ArrayList<Batch> batches = new ArrayList<Batch>();
+		ArrayDeque<ForkJoinTask<?>> waiting = new ArrayDeque<ForkJoinTask<?>>();
+		int maxWaiting = BATCHES_PER_THREAD*pool.getParallelism();
+		int numLines = 0;
+		BufferedReader in = new BufferedReader(new FileReader(textFile));
+		
+		try{
+			String line = in.readLine();
+			
+			while( line != null ){
+				Batch batch = new Batch(numLines);
+				
+				while( line != null && batch.size < BATCH_SIZE ){
+					batch.lines[batch.size++] = line;
+					line = in.readLine();
+				}
+				
+				numLines += batch.size;
+				batches.add(batch);
+				
+				// don't read too far ahead of the tokenizing
+				if( waiting.size() >= maxWaiting ){
+					waiting.removeFirst().join();
+				}
+				
+				waiting.addLast(pool.submit(new LineTask(batch, null)));
+			}
+		}finally{
+			in.close();
+		}
+		
+		while( !waiting.isEmpty() ){
+			waiting.removeFirst().join();
+		}
+		
+		// number the words by where they were first seen
+		VocabEntry[] entries = vocabulary.values().toArray(new VocabEntry[vocabulary.size()]);
+		Arrays.sort(entries, new Comparator<VocabEntry>(){
+			public int compare(VocabEntry e1, VocabEntry e2){
+				return Long.compare(e1.firstSeen.get(), e2.firstSeen.get());
+			}
+		});
+		
+		words = new String[entries.length];
+		remap = new int[nextId.get()];
+		
+		for( int i = 0; i < entries.length; i++ ){
+			words[i] = entries[i].word;
+			remap[entries[i].id] = i;
+		}
+		
+		vocabulary = null;
+		
+		Example[] examples = new Example[numLines];
+		
+		for( Batch batch: batches ){
+			waiting.addLast(pool.submit(new LineTask(batch, examples)));
+		}
+		
+		while( !waiting.isEmpty() ){
+			waiting.removeFirst().join();
+		}
+		
+		remap = null;
+		return Arrays.asList(examples);
+	}
+	
+	/**
+	 * Get the mapping from feature indices to words.  Only valid after read.
+	 * 
+	 * @return the feature map
+	 */
+	public HashMap<Integer, String> getFeatureMap(){
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		
+		for( int i = 0; i < words.length; i++ ){
+			featureMap.put(i, words[i]);
+		}
+		
+		return featureMap;
+	}
+	
+	/**
+	 * Split a line into words, count them and give any new words a provisional id
+	 * 
+	 * @param batch
+	 * @param i the position of the line in the batch
+	 */
+	private void tokenize(Batch batch, int i){
+		long line = batch.start + i;
+		String[] parts = batch.lines[i].split("\\s+");
+		batch.labels[i] = Double.parseDouble(parts[0]);
+		HashMapCounter<String> counter = TextDataReader.countWords(parts);
+		
+		int[] lineIds = new int[counter.size()];
+		int[] lineCounts = new int[counter.size()];
+		int position = 0;
+		
+		// TextDataReader numbers new words in this (key set) order
+		for( String word: counter.keySet() ){
+			VocabEntry entry = vocabulary.get(word);
+			
+			if( entry == null ){
+				// if another thread adds the word first its id is wasted, which is fine
+				VocabEntry newEntry = new VocabEntry(word, nextId.getAndIncrement());
+				entry = vocabulary.putIfAbsent(word, newEntry);
+				
+				if( entry == null ){
+					entry = newEntry;
+				}
+			}
+			
+			entry.seenAt((line << POSITION_BITS) + position);
+			lineIds[position] = entry.id;
+			lineCounts[position] = counter.get(word);
+			position++;
+		}
+		
+		batch.ids[i] = lineIds;
+		batch.counts[i] = lineCounts;
+	}
+	
+	/**
+	 * Build the example for a line from its tokens once the words have been renumbered
+	 * 
+	 * @param batch
+	 * @param line the position of the line in the batch
+	 * @return the example
+	 */
+	private Example buildExample(Batch batch, int line){
+		int[] lineIds = batch.ids[line];
+		int numFeatures = lineIds.length;
+		
+		// sort by feature index, packing each count in with its index
+		long[] packed = new long[numFeatures];
+		
+		for( int i = 0; i < numFeatures; i++ ){
+			packed[i] = ((long)remap[lineIds[i]] << 32) | batch.counts[line][i];
+		}
+		
+		Arrays.sort(packed);
+		
+		int[] indices = new int[numFeatures];
+		double[] values = new double[numFeatures];
+		
+		for( int i = 0; i < numFeatures; i++ ){
+			indices[i] = (int)(packed[i] >>> 32);
+			values[i] = (int)packed[i];
+		}
+		
+		return new Example(indices, values, numFeatures, batch.labels[line]);
+	}
+	
+	/**
+	 * A word in the vocabulary.  The id is only provisional since which thread
+	 * gets to a word first is arbitrary.
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private static class VocabEntry{
+		private String word;
+		private int id;
+		private AtomicLong firstSeen = new AtomicLong(Long.MAX_VALUE);
+		
+		public VocabEntry(String word, int id){
+			this.word = word;
+			this.id = id;
+		}
+		
+		/**
+		 * Record that the word was seen at position, keeping the earliest
+		 * 
+		 * @param position
+		 */
+		public void seenAt(long position){
+			long current = firstSeen.get();
+			
+			while( position < current && !firstSeen.compareAndSet(current, position) ){
+				current = firstSeen.get();
+			}
+		}
+	}
+	
+	/**
+	 * A batch of consecutive lines of the file and what they were tokenized
+	 * into, using the provisional word ids
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private static class Batch{
+		private int start; // the line number of the first line
+		private int size = 0;
+		private String[] lines = new String[BATCH_SIZE]; // null once tokenized
+		private double[] labels = new double[BATCH_SIZE];
+		private int[][] ids = new int[BATCH_SIZE][];
+		private int[][] counts = new int[BATCH_SIZE][];
+		
+		public Batch(int start){
+			this.start = start;
+		}
+	}
+	
+	/**
+	 * Tokenizes (or builds the examples for) the lines of a batch
+	 * 
+	 * @author plittle
+	 * 
+	 */
+	private class LineTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		
+		private Batch batch;
+		private Example[] examples; // where to put the examples, or null to tokenize
+		
+		public LineTask(Batch batch, Example[] examples){
+			this.batch = batch;
+			this.examples = examples;
+		}
+		
+		@Override
+		protected void compute() {
+			if( examples == null ){
+				for( int i = 0; i < batch.size; i++ ){
+					tokenize(batch, i);
+				}
+				
+				batch.lines = null;
+			}else{
+				for( int i = 0; i < batch.size; i++ ){
+					examples[batch.start + i] = buildExample(batch, i);
+				}
+				
+				batch.ids = null;
+				batch.counts = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package ml.data;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Column-major storage of the features of a data set quantized into at most
+ * 256 bins per feature, one (unsigned) byte per value.  This takes an eighth of
+ * the memory of the doubles, and a learner that only needs to know which bin a
+ * value falls in (e.g. to count the labels of each bin for a split) can sweep
+ * a column of bytes.
+ * 
+ * The bins of a feature are chosen from the quantiles of its values so that
+ * each bin holds roughly the same number of rows, except that zero always gets
+ * a bin of its own: a zero/non-zero test (see DecisionTreeNode.LEFT_BRANCH) is
+ * then still exact after quantizing.  A feature with no more distinct values
+ * than bins gets a bin for each value.
+ * 
+ * Bin b of a feature holds the values v with upperBound[b-1] < v <= upperBound[b],
+ * where upperBound[-1] is minus infinity.  Values above the last upper bound
+ * (i.e. that weren't in the data) go in the last bin.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class QuantizedData {
+	public static final int MAX_BINS = 256;
+	
+	private byte[][] bins; // bins[featureIndex][row], null for unused feature indices
+	private double[][] upperBounds; // upperBounds[featureIndex][bin]
+	private int[] zeroBins; // zeroBins[featureIndex] is the bin holding 0.0
+	private int[] classIds; // classIds[row]
+	private int numClasses;
+	private int numRows;
+	
+	/**
+	 * Quantize the features of a list of examples
+	 * 
+	 * @param rows the examples, one per row
+	 * @param features the feature indices to quantize
+	 * @param numIndices one more than the largest feature index
+	 * @param maxBins the most bins to use for a feature (between 2 and MAX_BINS)
+	 * @param classIds the class id of each row's label
+	 * @param numClasses the number of class ids
+	 */
+	public QuantizedData(List<Example> rows, Set<Integer> features, int numIndices, int maxBins,
+			int[] classIds, int numClasses){
+		if( maxBins < 2 || maxBins > MAX_BINS ){
+			throw new IllegalArgumentException("The number of bins must be between 2 and " + MAX_BINS + ": " + maxBins);
+		}
+		
+		numRows = rows.size();
+		this.classIds = classIds;
+		this.numClasses = numClasses;
+		bins = new byte[numIndices][];
+		upperBounds = new double[numIndices][];
+		zeroBins = new int[numIndices];
+		
+		// get the values a column at a time (zeros aren't stored)
+		double[][] values = new double[numIndices][];
+		
+		for( int f: features ){
+			values[f] = new double[numRows];
+		}
+		
+		for( int row = 0; row < numRows; row++ ){
+			Example e = rows.get(row);
+			
+			for( int i = 0; i < e.getNumFeatures(); i++ ){
+				int f = e.getFeatureIndexAt(i);
+				
+				if( f < numIndices && values[f] != null ){
+					values[f][row] = e.getFeatureValueAt(i);
+				}
+			}
+		}
+		
+		for( int f: features ){
+			upperBounds[f] = chooseUpperBounds(values[f], maxBins);
+			zeroBins[f] = findBin(upperBounds[f], 0.0);
+			bins[f] = new byte[numRows];
+			
+			for( int row = 0; row < numRows; row++ ){
+				bins[f][row] = (byte)findBin(upperBounds[f], values[f][row]);
+			}
+			
+			values[f] = null;
+		}
+	}
+	
+	/**
+	 * @return the number of rows
+	 */
+	public int getNumRows(){
+		return numRows;
+	}
+	
+	/**
+	 * Get the bin of every row for a feature.  The bins are unsigned, so read
+	 * them with (column[row] & 0xFF).  The array is the backing storage and
+	 * should NOT be modified.
+	 * 
+	 * @param featureIndex
+	 * @return the bins of featureIndex
+	 */
+	public byte[] getColumn(int featureIndex){
+		return bins[featureIndex];
+	}
+	
+	/**
+	 * @param featureIndex
+	 * @param row
+	 * @return the bin of the row's value for featureIndex
+	 */
+	public int getBin(int featureIndex, int row){
+		return bins[featureIndex][row] & 0xFF;
+	}
+	
+	/**
+	 * @param featureIndex
+	 * @return the number of bins used for featureIndex
+	 */
+	public int getNumBins(int featureIndex){
+		return upperBounds[featureIndex].length;
+	}
+	
+	/**
+	 * @param featureIndex
+	 * @param bin
+	 * @return the largest value (seen in the data) that goes in bin
+	 */
+	public double getUpperBound(int featureIndex, int bin){
+		return upperBounds[featureIndex][bin];
+	}
+	
+	/**
+	 * @param featureIndex
+	 * @return the bin that holds zero for featureIndex
+	 */
+	public int getZeroBin(int featureIndex){
+		return zeroBins[featureIndex];
+	}
+	
+	/**
+	 * Get the bin a value (e.g. of an example that isn't in the data) would go in
+	 * 
+	 * @param featureIndex
+	 * @param value
+	 * @return the bin of value
+	 */
+	public int getBin(int featureIndex, double value){
+		return findBin(upperBounds[featureIndex], value);
+	}
+	
+	/**
+	 * Get the class id of the label of every row (see DataSet.getClassIdColumn).
+	 * The array should NOT be modified.
+	 * 
+	 * @return the class ids
+	 */
+	public int[] getClassIds(){
+		return classIds;
+	}
+	
+	/**
+	 * @return the number of class ids
+	 */
+	public int getNumClasses(){
+		return numClasses;
+	}
+	
+	/**
+	 * Choose the upper bounds of the bins of a column: zero on its own, and the
+	 * rest of the bins split between the negative and the positive values in
+	 * proportion to how many there are.
+	 * 
+	 * @param column the values of every row
+	 * @param maxBins the most bins to use
+	 * @return the upper bounds of the bins, in increasing order
+	 */
+	private static double[] chooseUpperBounds(double[] column, int maxBins){
+		double[] sorted = column.clone();
+		Arrays.sort(sorted);
+		
+		// sorted[0, zeroStart) are negative, sorted[zeroEnd, length) are positive
+		int zeroStart = 0;
+		
+		while( zeroStart < sorted.length && sorted[zeroStart] < 0 ){
+			zeroStart++;
+		}
+		
+		int zeroEnd = zeroStart;
+		
+		while( zeroEnd < sorted.length && sorted[zeroEnd] == 0 ){
+			zeroEnd++;
+		}
+		
+		int numNegative = zeroStart;
+		int numPositive = sorted.length - zeroEnd;
+		int binsLeft = maxBins - 1; // one for zero
+		int negativeBins = 0;
+		
+		if( numNegative > 0 && numPositive > 0 ){
+			negativeBins = (int)Math.round(binsLeft * (numNegative / (double)(numNegative + numPositive)));
+			negativeBins = Math.max(1, Math.min(binsLeft-1, negativeBins));
+		}else if( numNegative > 0 ){
+			negativeBins = binsLeft;
+		}
+		
+		double[] bounds = new double[maxBins];
+		int numBounds = addQuantiles(sorted, 0, zeroStart, negativeBins, bounds, 0);
+		bounds[numBounds++] = 0.0;
+		numBounds = addQuantiles(sorted, zeroEnd, sorted.length, binsLeft - negativeBins, bounds, numBounds);
+		
+		return Arrays.copyOf(bounds, numBounds);
+	}
+	
+	/**
+	 * Add the upper bounds for a sorted range of values split into (at most)
+	 * numBins bins of about the same size.  A value is never split across bins,
+	 * so if there are lots of repeats there will be fewer bins.
+	 * 
+	 * @param sorted the values in increasing order
+	 * @param start the first value of the range
+	 * @param end one past the last value of the range
+	 * @param numBins the most bins to split the range into
+	 * @param bounds where to add the upper bounds
+	 * @param numBounds the number of bounds already in bounds
+	 * @return the number of bounds in bounds afterwards
+	 */
+	private static int addQuantiles(double[] sorted, int start, int end, int numBins, double[] bounds, int numBounds){
+		int size = end - start;
+		int distinct = 0;
+		
+		for( int i = start; i < end && distinct <= numBins; i++ ){
+			if( i == start || sorted[i] != sorted[i-1] ){
+				distinct++;
+			}
+		}
+		
+		// few enough values for a bin each
+		if( distinct <= numBins ){
+			for( int i = start; i < end; i++ ){
+				if( i == start || sorted[i] != sorted[i-1] ){
+					bounds[numBounds++] = sorted[i];
+				}
+			}
+			
+			return numBounds;
+		}
+		
+		for( int bin = 1; bin <= numBins && size > 0; bin++ ){
+			// the last value of this bin's share of the range
+			double bound = sorted[start + (int)(((long)bin * size + numBins - 1) / numBins) - 1];
+			
+			if( numBounds == 0 || bound != bounds[numBounds-1] ){
+				bounds[numBounds++] = bound;
+			}
+		}
+		
+		return numBounds;
+	}
+	
+	/**
+	 * @param upperBounds
+	 * @param value
+	 * @return the first bin whose upper bound is at least value (or the last bin)
+	 */
+	private static int findBin(double[] upperBounds, double value){
+		int pos = Arrays.binarySearch(upperBounds, value);
+		
+		if( pos < 0 ){
+			pos = Math.min(-(pos+1), upperBounds.length-1);
+		}
+		
+		return pos;
+	}
+}
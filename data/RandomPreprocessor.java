@@ -24,11 +24,10 @@ public class RandomPreprocessor extends DataPreprocessor {
 	 * Preprocess test data, based on features removed in training
 	 * 
 	 * @param test - the dataset to preprocess
-	 * @return a copy of the dataset with features removed
+	 * @return a view of the dataset with features removed
 	 */
 	public DataSet preprocessTest(DataSet test) {
-		ArrayList<Example> examples = (ArrayList<Example>) test.getData().clone();
-		return returnCopyWithFeatures(examples, usableFeatures, unwantedFeatures);
+		return test.project(usableFeatures);
 	}
 	
 	/**
@@ -40,7 +39,6 @@ public class RandomPreprocessor extends DataPreprocessor {
 	 */
 	public DataSet preprocessTrain(DataSet data, int n){
 		Random r = new Random();
-		ArrayList<Example> examples = (ArrayList<Example>) data.getData().clone();
 		HashMap<Integer,String> featureMap = data.getFeatureMap();
 		//Setup for elimination
 		ArrayList<Integer> unselected = new ArrayList<Integer>();
@@ -60,8 +58,8 @@ public class RandomPreprocessor extends DataPreprocessor {
 		for (int i : unselected){
 			usableFeatures.put(i, featureMap.get(i));
 		}
-		//Return copy of dataset with features removed
-		return returnCopyWithFeatures(examples, usableFeatures, unwantedFeatures);
+		//Return a view of the dataset with features removed
+		return data.project(usableFeatures);
 	}
 	
 }
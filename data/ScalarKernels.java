@@ -0,0 +1,78 @@
+package ml.data;
+
+/**
+ * The VectorKernels as plain loops, one value at a time
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class ScalarKernels extends VectorKernels {
+	
+	@Override
+	public String getName(){
+		return "scalar";
+	}
+	
+	@Override
+	public double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length){
+		double dist = 0.0;
+		
+		for( int i = 0; i < length; i++ ){
+			double diff = a[aOffset + i] - b[bOffset + i];
+			dist += diff*diff;
+		}
+		
+		return dist;
+	}
+	
+	@Override
+	public float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length){
+		float dist = 0.0f;
+		
+		for( int i = 0; i < length; i++ ){
+			float diff = a[aOffset + i] - b[bOffset + i];
+			dist += diff*diff;
+		}
+		
+		return dist;
+	}
+	
+	@Override
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int length){
+		double sum = 0.0;
+		
+		for( int i = 0; i < length; i++ ){
+			sum += a[aOffset + i]*b[bOffset + i];
+		}
+		
+		return sum;
+	}
+	
+	@Override
+	public float dot(float[] a, int aOffset, float[] b, int bOffset, int length){
+		float sum = 0.0f;
+		
+		for( int i = 0; i < length; i++ ){
+			sum += a[aOffset + i]*b[bOffset + i];
+		}
+		
+		return sum;
+	}
+	
+	@Override
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length){
+		for( int i = 0; i < length; i++ ){
+			y[yOffset + i] += alpha*x[xOffset + i];
+		}
+	}
+	
+	@Override
+	public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length){
+		for( int i = 0; i < length; i++ ){
+			y[yOffset + i] += alpha*x[xOffset + i];
+		}
+	}
+}
@@ -29,11 +29,39 @@ public class TextDataReader implements Iterator<Example>{
 	// keep track of the mapping of the words to their feature index
 	private HashMap<String, Integer> wordToFeature = new HashMap<String,Integer>();
 	private int currentFeature = 0;
+	
+	// for the hashing trick: the number of feature buckets (0 if not hashing) and
+	// the first word seen in each bucket (to name the features)
+	private int numBuckets = 0;
+	private String[] bucketWords;
+	
+	// FNV-1a hash constants
+	private static final int FNV_OFFSET = 0x811c9dc5;
+	private static final int FNV_PRIME = 0x01000193;
 		
 	/**
 	 * @param textFile the text file containing the examples
 	 */
 	public TextDataReader(String textFile){		
+		this(textFile, 0);
+	}
+	
+	/**
+	 * Create a reader that uses the hashing trick: rather than giving every word
+	 * its own feature, each word is hashed into one of numBuckets features.  The
+	 * memory used for the features stays constant no matter how many different
+	 * words there are.
+	 * 
+	 * @param textFile the text file containing the examples
+	 * @param numBuckets the number of features to hash the words into (0 to not hash)
+	 */
+	public TextDataReader(String textFile, int numBuckets){
+		this.numBuckets = numBuckets;
+		
+		if( numBuckets > 0 ){
+			bucketWords = new String[numBuckets];
+		}
+		
 		try {
 			in = new BufferedReader(new FileReader(textFile));
 			nextLine = in.readLine();
@@ -51,26 +79,16 @@ public class TextDataReader implements Iterator<Example>{
 	public Example next() {
 		Example data = null;
 		
-		if( hasNext() ){
+		if( hasNext() && numBuckets > 0 ){
+			data = nextHashed();
+		}else if( hasNext() ){
 			data = new Example();
 			
 			// parse the line
 			String[] parts = nextLine.split("\\s+");
 			
 			data.setLabel(Double.parseDouble(parts[0]));
-	
-			// do a little bit of preprocessing and count how
-			// many times each word occurs
-			HashMapCounter<String> counter = new HashMapCounter<String>();
-			
-			for( int i = 1; i < parts.length; i++ ){
-				String w = parts[i].toLowerCase();
-				
-				// check if it has at least one alphabet character
-				if( !w.matches("[^a-z]+")){
-					counter.increment(w);
-				}
-			}
+			HashMapCounter<String> counter = countWords(parts);
 			
 			for( String word: counter.keySet() ){
 				if( !wordToFeature.containsKey(word) ){
@@ -83,6 +101,11 @@ public class TextDataReader implements Iterator<Example>{
 			
 			try {
 				nextLine = in.readLine();
+				
+				// done with the file
+				if( nextLine == null ){
+					in.close();
+				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -91,6 +114,137 @@ public class TextDataReader implements Iterator<Example>{
 		return data;
 	}
 	
+	/**
+	 * Do a little bit of preprocessing on the words of a line (everything
+	 * after the label) and count how many times each word occurs
+	 * 
+	 * @param parts the line split on whitespace
+	 * @return the count of each word
+	 */
+	static HashMapCounter<String> countWords(String[] parts){
+		HashMapCounter<String> counter = new HashMapCounter<String>();
+		
+		for( int i = 1; i < parts.length; i++ ){
+			String w = parts[i].toLowerCase();
+			
+			// check if it has at least one alphabet character
+			if( w.isEmpty() || hasLetter(w, 0, w.length()) ){
+				counter.increment(w);
+			}
+		}
+		
+		return counter;
+	}
+	
+	/**
+	 * Read the next example using the hashing trick.  The line is scanned a
+	 * character at a time, so no Strings are created for the words.
+	 * 
+	 * @return the next example
+	 */
+	private Example nextHashed(){
+		Example data = new Example();
+		String line = nextLine;
+		int length = line.length();
+		int pos = skipWhitespace(line, 0);
+		int end = skipWord(line, pos);
+		
+		data.setLabel(Double.parseDouble(line.substring(pos, end)));
+		pos = skipWhitespace(line, end);
+		
+		// count how many times each bucket occurs
+		while( pos < length ){
+			end = skipWord(line, pos);
+			
+			// check if it has at least one alphabet character
+			if( hasLetter(line, pos, end) ){
+				int hash = FNV_OFFSET;
+				
+				for( int i = pos; i < end; i++ ){
+					hash ^= Character.toLowerCase(line.charAt(i));
+					hash *= FNV_PRIME;
+				}
+				
+				int bucket = (hash & Integer.MAX_VALUE) % numBuckets;
+				data.addFeature(bucket, data.getFeature(bucket) + 1);
+				
+				if( bucketWords[bucket] == null ){
+					bucketWords[bucket] = line.substring(pos, end).toLowerCase();
+				}
+			}
+			
+			pos = skipWhitespace(line, end);
+		}
+		
+		try {
+			nextLine = in.readLine();
+			
+			// done with the file
+			if( nextLine == null ){
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return data;
+	}
+	
+	/**
+	 * Check if the characters of s between start and end contain at least one
+	 * letter from a to z (after lowercasing)
+	 * 
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return whether or not there is a letter
+	 */
+	private static boolean hasLetter(String s, int start, int end){
+		for( int i = start; i < end; i++ ){
+			char c = Character.toLowerCase(s.charAt(i));
+			
+			if( c >= 'a' && c <= 'z' ){
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @param s
+	 * @param pos
+	 * @return the position of the first non-whitespace character at or after pos
+	 */
+	private static int skipWhitespace(String s, int pos){
+		while( pos < s.length() && isWhitespace(s.charAt(pos)) ){
+			pos++;
+		}
+		
+		return pos;
+	}
+	
+	/**
+	 * @param s
+	 * @param pos
+	 * @return the position of the first whitespace character at or after pos
+	 */
+	private static int skipWord(String s, int pos){
+		while( pos < s.length() && !isWhitespace(s.charAt(pos)) ){
+			pos++;
+		}
+		
+		return pos;
+	}
+	
+	/**
+	 * @param c
+	 * @return whether c is whitespace (the same characters as \\s in a regular expression)
+	 */
+	private static boolean isWhitespace(char c){
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	
 	@Override
 	public void remove() {
 		// OPTIONAL, so we won't implement
@@ -106,6 +260,17 @@ public class TextDataReader implements Iterator<Example>{
 	public HashMap<Integer, String> getFeatureMap(){
 		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
 		
+		if( numBuckets > 0 ){
+			// only the buckets that were used, named by the first word hashed into them
+			for( int bucket = 0; bucket < numBuckets; bucket++ ){
+				if( bucketWords[bucket] != null ){
+					featureMap.put(bucket, bucketWords[bucket]);
+				}
+			}
+			
+			return featureMap;
+		}
+		
 		for( String word: wordToFeature.keySet() ){
 			featureMap.put(wordToFeature.get(word), word);
 		}
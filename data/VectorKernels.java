@@ -0,0 +1,144 @@
+package ml.data;
+
+/**
+ * The inner loops shared by the classifiers (squared distance, dot product
+ * and axpy, i.e. y += alpha*x) over ranges of primitive arrays.  There are two
+ * implementations: ScalarKernels, plain loops, and SimdKernels, which uses
+ * the (incubating) Vector API to work on as many values at once as the CPU's
+ * vector registers hold.  SIMD sums add the values up in a different order, so
+ * results can differ from the scalar ones in the last few bits.
+ * 
+ * SimdKernels is in its own source folder (simd), since it can only be
+ * compiled with --add-modules jdk.incubator.vector; the rest of the project
+ * compiles with a plain javac.  build.sh compiles both (the simd folder only
+ * if the JDK has the module).  SimdKernels is only used if it was compiled and
+ * the program is run with --add-modules jdk.incubator.vector.  Otherwise (or
+ * if the system property ml.simd is false) the scalar kernels are used.  Which
+ * is used can also be changed at any time with setUseSimd.
+ * 
+ * In KNNClassifier, the distances computed with DenseMatrix.squaredDistance
+ * go through these: brute force without early abandoning, the distances
+ * checked by the trees, HNSW and LSH, and the distances BatchNeighborSearch
+ * computes for the rows it can't rule out.  The default brute force search
+ * (PartialDistanceScan) doesn't, since it gives up on most rows after a few
+ * columns, which is too few for SIMD to help.  Neither do the Hamming and
+ * inverted index searches, which don't compare rows of doubles or floats.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public abstract class VectorKernels {
+	private static final VectorKernels SCALAR = new ScalarKernels();
+	private static final VectorKernels SIMD = loadSimd();
+	private static volatile VectorKernels current =
+			SIMD != null && !"false".equals(System.getProperty("ml.simd")) ? SIMD : SCALAR;
+	
+	/**
+	 * @return the kernels currently selected
+	 */
+	public static VectorKernels get(){
+		return current;
+	}
+	
+	/**
+	 * @return the plain loop kernels, whichever are selected
+	 */
+	public static VectorKernels getScalar(){
+		return SCALAR;
+	}
+	
+	/**
+	 * @return whether or not the Vector API kernels can be used
+	 */
+	public static boolean isSimdAvailable(){
+		return SIMD != null;
+	}
+	
+	/**
+	 * Select the Vector API kernels or the scalar ones
+	 * 
+	 * @param useSimd
+	 */
+	public static void setUseSimd(boolean useSimd){
+		if( useSimd && SIMD == null ){
+			throw new IllegalArgumentException("The Vector API isn't available (run with --add-modules jdk.incubator.vector)");
+		}
+		
+		current = useSimd ? SIMD : SCALAR;
+	}
+	
+	/**
+	 * Load SimdKernels by name, so that this class (and everything using it)
+	 * still works when the Vector API module isn't there
+	 * 
+	 * @return the kernels, or null if the Vector API isn't available
+	 */
+	private static VectorKernels loadSimd(){
+		try{
+			VectorKernels kernels = (VectorKernels)Class.forName("ml.data.SimdKernels").getDeclaredConstructor().newInstance();
+			
+			// make sure the Vector API classes actually link
+			kernels.dot(new double[1], 0, new double[1], 0, 1);
+			return kernels;
+		}catch( ReflectiveOperationException e ){
+			return null;
+		}catch( LinkageError e ){
+			return null;
+		}
+	}
+	
+	/**
+	 * @return a short name for these kernels
+	 */
+	public abstract String getName();
+	
+	/**
+	 * @param a
+	 * @param aOffset
+	 * @param b
+	 * @param bOffset
+	 * @param length
+	 * @return the squared euclidean distance between a[aOffset..aOffset+length) and b[bOffset..bOffset+length)
+	 */
+	public abstract double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length);
+	
+	/**
+	 * The same as squaredDistance, but for floats (and computed in floats)
+	 */
+	public abstract float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length);
+	
+	/**
+	 * @param a
+	 * @param aOffset
+	 * @param b
+	 * @param bOffset
+	 * @param length
+	 * @return the dot product of a[aOffset..aOffset+length) and b[bOffset..bOffset+length)
+	 */
+	public abstract double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+	
+	/**
+	 * The same as dot, but for floats (and computed in floats)
+	 */
+	public abstract float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+	
+	/**
+	 * Add alpha*x[xOffset..xOffset+length) to y[yOffset..yOffset+length)
+	 * 
+	 * @param alpha
+	 * @param x
+	 * @param xOffset
+	 * @param y
+	 * @param yOffset
+	 * @param length
+	 */
+	public abstract void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+	
+	/**
+	 * The same as axpy, but for floats
+	 */
+	public abstract void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+}
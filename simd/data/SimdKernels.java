@@ -0,0 +1,180 @@
+package ml.data;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorKernels with the Vector API: each loop works on a whole vector
+ * register of values at a time (e.g. 4 doubles or 8 floats with AVX2), with
+ * the leftover values at the end done one at a time.  The sums are kept per
+ * lane and only added together at the end.  Products are added with mul and
+ * add rather than fma, which is very slow on CPUs without an FMA instruction.
+ * Short arrays are left to the scalar loops.
+ * 
+ * Needs the jdk.incubator.vector module to compile and run, so it's kept in
+ * its own source folder (simd), which is compiled separately with
+ * --add-modules jdk.incubator.vector (see build.sh), and it's only loaded by
+ * name (see VectorKernels).
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+class SimdKernels extends VectorKernels {
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	
+	// shorter arrays than this are faster with the plain loops, since the
+	// vectors have to be added together at the end
+	private static final int MIN_LENGTH = 64;
+	private static final ScalarKernels SCALAR = new ScalarKernels();
+	
+	@Override
+	public String getName(){
+		return "simd (" + DOUBLES.length() + " doubles, " + FLOATS.length() + " floats)";
+	}
+	
+	@Override
+	public double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length){
+		if( length < MIN_LENGTH ){
+			return SCALAR.squaredDistance(a, aOffset, b, bOffset, length);
+		}
+		
+		DoubleVector sums = DoubleVector.zero(DOUBLES);
+		int bound = DOUBLES.loopBound(length);
+		int i = 0;
+		
+		for( ; i < bound; i += DOUBLES.length() ){
+			DoubleVector diff = DoubleVector.fromArray(DOUBLES, a, aOffset + i).sub(
+					DoubleVector.fromArray(DOUBLES, b, bOffset + i));
+			sums = diff.mul(diff).add(sums);
+		}
+		
+		double dist = sums.reduceLanes(VectorOperators.ADD);
+		
+		for( ; i < length; i++ ){
+			double diff = a[aOffset + i] - b[bOffset + i];
+			dist += diff*diff;
+		}
+		
+		return dist;
+	}
+	
+	@Override
+	public float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length){
+		if( length < MIN_LENGTH ){
+			return SCALAR.squaredDistance(a, aOffset, b, bOffset, length);
+		}
+		
+		FloatVector sums = FloatVector.zero(FLOATS);
+		int bound = FLOATS.loopBound(length);
+		int i = 0;
+		
+		for( ; i < bound; i += FLOATS.length() ){
+			FloatVector diff = FloatVector.fromArray(FLOATS, a, aOffset + i).sub(
+					FloatVector.fromArray(FLOATS, b, bOffset + i));
+			sums = diff.mul(diff).add(sums);
+		}
+		
+		float dist = sums.reduceLanes(VectorOperators.ADD);
+		
+		for( ; i < length; i++ ){
+			float diff = a[aOffset + i] - b[bOffset + i];
+			dist += diff*diff;
+		}
+		
+		return dist;
+	}
+	
+	@Override
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int length){
+		if( length < MIN_LENGTH ){
+			return SCALAR.dot(a, aOffset, b, bOffset, length);
+		}
+		
+		DoubleVector sums = DoubleVector.zero(DOUBLES);
+		int bound = DOUBLES.loopBound(length);
+		int i = 0;
+		
+		for( ; i < bound; i += DOUBLES.length() ){
+			sums = DoubleVector.fromArray(DOUBLES, a, aOffset + i).mul(
+					DoubleVector.fromArray(DOUBLES, b, bOffset + i)).add(sums);
+		}
+		
+		double sum = sums.reduceLanes(VectorOperators.ADD);
+		
+		for( ; i < length; i++ ){
+			sum += a[aOffset + i]*b[bOffset + i];
+		}
+		
+		return sum;
+	}
+	
+	@Override
+	public float dot(float[] a, int aOffset, float[] b, int bOffset, int length){
+		if( length < MIN_LENGTH ){
+			return SCALAR.dot(a, aOffset, b, bOffset, length);
+		}
+		
+		FloatVector sums = FloatVector.zero(FLOATS);
+		int bound = FLOATS.loopBound(length);
+		int i = 0;
+		
+		for( ; i < bound; i += FLOATS.length() ){
+			sums = FloatVector.fromArray(FLOATS, a, aOffset + i).mul(
+					FloatVector.fromArray(FLOATS, b, bOffset + i)).add(sums);
+		}
+		
+		float sum = sums.reduceLanes(VectorOperators.ADD);
+		
+		for( ; i < length; i++ ){
+			sum += a[aOffset + i]*b[bOffset + i];
+		}
+		
+		return sum;
+	}
+	
+	@Override
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length){
+		if( length < MIN_LENGTH ){
+			SCALAR.axpy(alpha, x, xOffset, y, yOffset, length);
+			return;
+		}
+		
+		int bound = DOUBLES.loopBound(length);
+		int i = 0;
+		
+		for( ; i < bound; i += DOUBLES.length() ){
+			DoubleVector.fromArray(DOUBLES, x, xOffset + i).mul(alpha).add(
+					DoubleVector.fromArray(DOUBLES, y, yOffset + i)).intoArray(y, yOffset + i);
+		}
+		
+		for( ; i < length; i++ ){
+			y[yOffset + i] += alpha*x[xOffset + i];
+		}
+	}
+	
+	@Override
+	public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length){
+		if( length < MIN_LENGTH ){
+			SCALAR.axpy(alpha, x, xOffset, y, yOffset, length);
+			return;
+		}
+		
+		int bound = FLOATS.loopBound(length);
+		int i = 0;
+		
+		for( ; i < bound; i += FLOATS.length() ){
+			FloatVector.fromArray(FLOATS, x, xOffset + i).mul(alpha).add(
+					FloatVector.fromArray(FLOATS, y, yOffset + i)).intoArray(y, yOffset + i);
+		}
+		
+		for( ; i < length; i++ ){
+			y[yOffset + i] += alpha*x[xOffset + i];
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package ml.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import ml.data.ByteCSVDataReader;
+import ml.data.CSVDataReader;
+import ml.data.ColumnarData;
+import ml.data.Example;
+
+/**
+ * Compares the throughput of CSVDataReader (String.split and Double.parseDouble
+ * per cell) with ByteCSVDataReader (parsing the bytes in place), both on one thread
+ * and in parallel chunks, on a large CSV file.
+ * 
+ * Usage: CSVReaderBenchmark [csv file] [number of runs]
+ * Without a file, a random file with 500,000 rows of 36 features is generated.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class CSVReaderBenchmark {
+	
+	public static void main(String[] args) throws IOException {
+		File file;
+		
+		if( args.length > 0 ){
+			file = new File(args[0]);
+		}else{
+			file = File.createTempFile("benchmark", ".csv");
+			file.deleteOnExit();
+			writeRandomCSV(file, 500000, 36);
+		}
+		
+		int numRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		double megabytes = file.length() / (1024.0*1024.0);
+		System.out.println(file + ": " + String.format("%.1f", megabytes) + "MB");
+		
+		long stringBest = Long.MAX_VALUE;
+		long byteBest = Long.MAX_VALUE;
+		long parallelBest = Long.MAX_VALUE;
+		double stringSum = 0;
+		double byteSum = 0;
+		double parallelSum = 0;
+		
+		// the first runs are warmup for the JIT, so report the best time
+		for( int run = 0; run < numRuns; run++ ){
+			long start = System.nanoTime();
+			stringSum = readWithStrings(file);
+			stringBest = Math.min(stringBest, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			byteSum = readWithBytes(file, null);
+			byteBest = Math.min(byteBest, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			parallelSum = readWithBytes(file, ForkJoinPool.commonPool());
+			parallelBest = Math.min(parallelBest, System.nanoTime() - start);
+		}
+		
+		report("CSVDataReader", stringBest, megabytes);
+		report("ByteCSVDataReader", byteBest, megabytes);
+		report("ByteCSVDataReader (" + ForkJoinPool.commonPool().getParallelism() + " threads)", parallelBest, megabytes);
+		System.out.println("Speedup: " + String.format("%.2f", stringBest/(double)byteBest) + "x, " +
+				String.format("%.2f", stringBest/(double)parallelBest) + "x parallel");
+		
+		if( stringSum != byteSum || stringSum != parallelSum ){
+			System.out.println("WARNING: the readers disagree (checksums " + stringSum + " vs " + byteSum +
+					" vs " + parallelSum + ")");
+		}
+	}
+	
+	/**
+	 * Read every example with CSVDataReader
+	 * 
+	 * @param file
+	 * @return a checksum of the values read
+	 * @throws IOException
+	 */
+	private static double readWithStrings(File file) throws IOException{
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		String line = in.readLine();
+		
+		while( line.startsWith("#") ){
+			line = in.readLine();
+		}
+		
+		int labelIndex = line.split(",").length-1;
+		CSVDataReader reader = new CSVDataReader(in, labelIndex);
+		double sum = 0;
+		
+		while( reader.hasNext() ){
+			Example e = reader.next();
+			sum += e.getLabel();
+			
+			for( int i = 0; i < e.getNumFeatures(); i++ ){
+				sum += e.getFeatureValueAt(i);
+			}
+		}
+		
+		in.close();
+		return sum;
+	}
+	
+	/**
+	 * Read every example with ByteCSVDataReader
+	 * 
+	 * @param file
+	 * @param pool the pool to read on in parallel, or null to read on this thread
+	 * @return a checksum of the values read
+	 * @throws IOException
+	 */
+	private static double readWithBytes(File file, ForkJoinPool pool) throws IOException{
+		ByteCSVDataReader reader = new ByteCSVDataReader(file.getPath());
+		ColumnarData data = pool == null ? reader.read() : reader.readParallel(pool);
+		double sum = 0;
+		
+		// sum in the same (row) order as readWithStrings so the checksums match exactly
+		for( int row = 0; row < data.getNumRows(); row++ ){
+			sum += data.getLabels()[row];
+			
+			for( int f = 0; f < reader.getNumColumns()-1; f++ ){
+				sum += data.getValue(row, f);
+			}
+		}
+		
+		return sum;
+	}
+	
+	private static void report(String name, long nanos, double megabytes){
+		double seconds = nanos / 1e9;
+		System.out.println(name + ": " + String.format("%.3f", seconds) + "s (" +
+				String.format("%.1f", megabytes/seconds) + "MB/s)");
+	}
+	
+	/**
+	 * Write a CSV file of random data with a mix of binary, integer and decimal features
+	 * 
+	 * @param file
+	 * @param numRows
+	 * @param numFeatures
+	 * @throws IOException
+	 */
+	private static void writeRandomCSV(File file, int numRows, int numFeatures) throws IOException{
+		Random rand = new Random(1);
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			out.write("f" + f + ",");
+		}
+		
+		out.write("label\n");
+		
+		for( int row = 0; row < numRows; row++ ){
+			for( int f = 0; f < numFeatures; f++ ){
+				if( f % 3 == 0 ){
+					out.write(Integer.toString(rand.nextInt(2)));
+				}else if( f % 3 == 1 ){
+					out.write(Integer.toString(rand.nextInt(1000) - 500));
+				}else{
+					out.write(String.format("%.4f", rand.nextGaussian()));
+				}
+				
+				out.write(",");
+			}
+			
+			out.write(rand.nextBoolean() ? "1\n" : "-1\n");
+		}
+		
+		out.close();
+	}
+}
@@ -0,0 +1,230 @@
+package ml.utils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import ml.classifiers.KNNClassifier;
+import ml.data.DataSet;
+import ml.data.DataSetSplit;
+import ml.data.Example;
+
+/**
+ * Compares the approximate nearest neighbors of KNNClassifier's HNSW search
+ * mode (for a range of efSearch values) and LSH search mode (for a range of
+ * tables and bits) against the exact (brute force) neighbors, reporting the
+ * recall (the fraction of the true k nearest neighbors found), how often the
+ * label matches the exact label, and the time per example.  HNSW is only
+ * reported for dense data.  The time for an exact search of the whole test
+ * set at once (see KNNClassifier.classifyAll) is also reported.
+ * 
+ * Usage: NearestNeighborReport [csv or text (.txt) file] [k]
+ * Without a file, 100,000 random examples with 32 features are generated.
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class NearestNeighborReport {
+	private static final int[] EF_SEARCH = {10, 20, 40, 80, 160, 320};
+	private static final int[] LSH_TABLES = {4, 8, 16};
+	private static final int[] LSH_BITS = {8, 12, 16};
+	
+	private static List<Example> test;
+	private static int[][] exactNeighbors;
+	private static double[] exactLabels;
+	
+	public static void main(String[] args) {
+		DataSet data;
+		
+		if( args.length > 0 && args[0].endsWith(".txt") ){
+			data = new DataSet(args[0], DataSet.TEXTFILE);
+		}else if( args.length > 0 ){
+			data = new DataSet(args[0], DataSet.CSVFILE);
+		}else{
+			data = randomData(100000, 32);
+		}
+		
+		int k = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		DataSetSplit split = data.split(0.9);
+		test = split.getTest().getData();
+		
+		System.out.println(split.getTrain().getData().size() + " training examples, " + test.size() +
+				" test examples, k = " + k);
+		
+		KNNClassifier exact = new KNNClassifier();
+		exact.setK(k);
+		exact.setSearchMode(KNNClassifier.BRUTE_FORCE);
+		exact.train(split.getTrain());
+		
+		exactNeighbors = new int[test.size()][];
+		exactLabels = new double[test.size()];
+		long start = System.nanoTime();
+		
+		for( int i = 0; i < test.size(); i++ ){
+			exactNeighbors[i] = exact.getNeighbors(test.get(i));
+			exactLabels[i] = exact.classify(test.get(i));
+		}
+		
+		// getNeighbors and classify each do a search
+		double exactMicros = (System.nanoTime() - start) / 2e3 / test.size();
+		
+		System.out.println("exact search: " + String.format("%.1f", exactMicros) + " microseconds");
+		System.out.println("early abandoning gave up on " + exact.getRowsAbandoned() + " of " + exact.getRowsChecked() +
+				" examples, skipping " + String.format("%.1f", 100*exact.getFractionOfFeaturesSkipped()) +
+				"% of the feature comparisons");
+		
+		// the same search for the whole test set at once
+		start = System.nanoTime();
+		int[][] batchNeighbors = exact.getNeighbors(test);
+		double batchMicros = (System.nanoTime() - start) / 1e3 / test.size();
+		int found = 0;
+		int total = 0;
+		
+		for( int i = 0; i < test.size(); i++ ){
+			found += countShared(batchNeighbors[i], exactNeighbors[i]);
+			total += exactNeighbors[i].length;
+		}
+		
+		System.out.println("exact batch search: " + String.format("%.1f", batchMicros) + " microseconds, recall " +
+				String.format("%.4f", found/(double)total));
+		
+		if( split.getTrain().isDense() ){
+			KNNClassifier approximate = new KNNClassifier();
+			approximate.setK(k);
+			approximate.setSearchMode(KNNClassifier.HNSW);
+			start = System.nanoTime();
+			approximate.train(split.getTrain());
+			double buildSeconds = (System.nanoTime() - start) / 1e9;
+			
+			System.out.println();
+			System.out.println("HNSW graph built in " + String.format("%.2f", buildSeconds) + "s");
+			System.out.println("efSearch\trecall\tsame label\tmicroseconds");
+			
+			for( int efSearch: EF_SEARCH ){
+				approximate.setEfSearch(efSearch);
+				System.out.println(efSearch + "\t" + compareToExact(approximate));
+			}
+		}
+		
+		System.out.println();
+		System.out.println("LSH");
+		System.out.println("tables\tbits\trecall\tsame label\tmicroseconds");
+		
+		for( int numTables: LSH_TABLES ){
+			for( int numBits: LSH_BITS ){
+				KNNClassifier approximate = new KNNClassifier();
+				approximate.setK(k);
+				approximate.setSearchMode(KNNClassifier.LSH);
+				approximate.setLSHParameters(numTables, numBits);
+				approximate.train(split.getTrain());
+				System.out.println(numTables + "\t" + numBits + "\t" + compareToExact(approximate));
+			}
+		}
+	}
+	
+	/**
+	 * Find the neighbors of the test examples with a classifier and compare
+	 * them with the exact neighbors
+	 * 
+	 * @param approximate a trained classifier
+	 * @return the recall, the fraction of labels that match and the time per example, tab separated
+	 */
+	private static String compareToExact(KNNClassifier approximate){
+		int found = 0;
+		int total = 0;
+		int sameLabel = 0;
+		long start = System.nanoTime();
+		
+		for( int i = 0; i < test.size(); i++ ){
+			int[] neighbors = approximate.getNeighbors(test.get(i));
+			
+			if( approximate.classify(test.get(i)) == exactLabels[i] ){
+				sameLabel++;
+			}
+			
+			found += countShared(neighbors, exactNeighbors[i]);
+			total += exactNeighbors[i].length;
+		}
+		
+		// getNeighbors and classify each do a search
+		double micros = (System.nanoTime() - start) / 2e3 / test.size();
+		
+		return String.format("%.4f", found/(double)total) + "\t" +
+				String.format("%.4f", sameLabel/(double)test.size()) + "\t" + String.format("%.1f", micros);
+	}
+	
+	/**
+	 * @param a
+	 * @param b
+	 * @return the number of rows in both a and b
+	 */
+	private static int countShared(int[] a, int[] b){
+		int count = 0;
+		
+		for( int rowA: a ){
+			for( int rowB: b ){
+				if( rowA == rowB ){
+					count++;
+					break;
+				}
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Generate random examples that lie near a few-dimensional subspace (like
+	 * most real data), labeled by which side of a hyperplane they're on
+	 * 
+	 * @param numExamples
+	 * @param numFeatures
+	 * @return the data set
+	 */
+	private static DataSet randomData(int numExamples, int numFeatures){
+		Random random = new Random(158);
+		int latent = 6;
+		double[][] mixing = new double[numFeatures][latent];
+		
+		for( double[] row: mixing ){
+			for( int j = 0; j < latent; j++ ){
+				row[j] = random.nextGaussian();
+			}
+		}
+		
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			featureMap.put(f, "f" + f);
+		}
+		
+		DataSet data = new DataSet(featureMap);
+		double[] z = new double[latent];
+		
+		for( int i = 0; i < numExamples; i++ ){
+			Example e = new Example();
+			
+			for( int j = 0; j < latent; j++ ){
+				z[j] = random.nextGaussian();
+			}
+			
+			for( int f = 0; f < numFeatures; f++ ){
+				double value = 0.1*random.nextGaussian();
+				
+				for( int j = 0; j < latent; j++ ){
+					value += mixing[f][j]*z[j];
+				}
+				
+				e.addFeature(f, value);
+			}
+			
+			e.setLabel(z[0] + z[1] > 0 ? 1.0 : -1.0);
+			data.addData(e);
+		}
+		
+		return data;
+	}
+}
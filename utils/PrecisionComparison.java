@@ -0,0 +1,73 @@
+package ml.utils;
+
+import ml.classifiers.Classifier;
+import ml.classifiers.GradientDescentClassifier;
+import ml.classifiers.KNNClassifier;
+import ml.classifiers.TwoLayerNN;
+import ml.data.CrossValidationSet;
+import ml.data.DataSet;
+
+/**
+ * Compares the accuracy and running time of the classifiers that support a
+ * float precision mode (KNN, gradient descent and the two layer network) in
+ * double and in float mode, using the same cross validation as TestExperiments.
+ * 
+ * Usage: PrecisionComparison [csv file] [number of folds]
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class PrecisionComparison {
+	
+	public static void main(String[] args) {
+		String file = args.length > 0 ? args[0] : "/Users/plittle/workspace/ML_Final_Proj/src/kr-vs-kp.data.csv";
+		int nFolds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		
+		DataSet data = new DataSet(file, DataSet.CSVFILE);
+		
+		// the same folds for both precisions, so the accuracies are comparable
+		CrossValidationSet cvs = new CrossValidationSet(data, nFolds);
+		
+		System.out.println("classifier\tprecision\taccuracy\tseconds");
+		
+		for( boolean useFloats: new boolean[]{false, true} ){
+			KNNClassifier knn = new KNNClassifier();
+			knn.setUseFloats(useFloats);
+			report("KNN", useFloats, knn, cvs, nFolds);
+		}
+		
+		for( boolean useFloats: new boolean[]{false, true} ){
+			GradientDescentClassifier gd = new GradientDescentClassifier();
+			gd.setUseFloats(useFloats);
+			report("GradientDescent", useFloats, gd, cvs, nFolds);
+		}
+		
+		for( boolean useFloats: new boolean[]{false, true} ){
+			TwoLayerNN nn = new TwoLayerNN(7);
+			nn.setUseFloats(useFloats);
+			report("TwoLayerNN", useFloats, nn, cvs, nFolds);
+		}
+	}
+	
+	/**
+	 * Run n-fold cross validation with a classifier and print the average
+	 * accuracy and the total time
+	 * 
+	 * @param name the name of the classifier
+	 * @param useFloats whether the classifier is in float mode
+	 * @param c the classifier
+	 * @param cvs the cross validation set
+	 * @param nFolds the number of folds
+	 */
+	private static void report(String name, boolean useFloats, Classifier c, CrossValidationSet cvs, int nFolds){
+		long start = System.nanoTime();
+		double accuracy = TestExperiments.averageList(TestExperiments.testNFold(cvs, c, nFolds));
+		double seconds = (System.nanoTime() - start) / 1e9;
+		
+		System.out.println(name + "\t" + (useFloats ? "float" : "double") + "\t" +
+				String.format("%.4f", accuracy) + "\t" + String.format("%.2f", seconds));
+	}
+}
@@ -0,0 +1,215 @@
+package ml.utils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import ml.classifiers.KNNClassifier;
+import ml.data.DataSet;
+import ml.data.DataSetSplit;
+import ml.data.Example;
+import ml.data.VectorKernels;
+
+/**
+ * Compares the scalar and SIMD (Vector API) versions of the VectorKernels
+ * for a range of vector lengths, and the time for KNN to classify examples by
+ * brute force with each.  KNN is timed both with early abandoning off, where
+ * every distance goes through the kernels, and with it on (the default),
+ * where the distances are added up with a plain loop (see
+ * PartialDistanceScan), so the SIMD kernels shouldn't change its time.
+ * 
+ * Must be run with --add-modules jdk.incubator.vector for the SIMD kernels to
+ * be available; otherwise only the scalar kernels are timed.
+ * 
+ * Usage: VectorKernelBenchmark [number of runs]
+ * 
+ * Patrick Little and Molly Driscoll
+ * CS158 Final Project
+ * 
+ * @author plittle
+ * 
+ */
+public class VectorKernelBenchmark {
+	private static final int[] LENGTHS = {8, 36, 128, 1024, 16384};
+	
+	// about how many values each timing goes through
+	private static final int VALUES_PER_TIMING = 1 << 24;
+	
+	private static final String[] NAMES = {"squaredDistance", "squaredDistance (float)", "dot", "dot (float)",
+		"axpy", "axpy (float)"};
+	
+	public static void main(String[] args) {
+		int numRuns = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		VectorKernels scalar = VectorKernels.getScalar();
+		VectorKernels simd = null;
+		
+		if( VectorKernels.isSimdAvailable() ){
+			VectorKernels.setUseSimd(true);
+			simd = VectorKernels.get();
+		}else{
+			System.out.println("The Vector API isn't available (run with --add-modules jdk.incubator.vector)");
+		}
+		
+		System.out.println("kernel\tlength\tscalar ns\t" + (simd == null ? "" : simd.getName() + " ns\tspeedup"));
+		
+		for( int length: LENGTHS ){
+			Random random = new Random(158);
+			double[] a = new double[length];
+			double[] b = new double[length];
+			float[] floatA = new float[length];
+			float[] floatB = new float[length];
+			
+			for( int i = 0; i < length; i++ ){
+				a[i] = random.nextGaussian();
+				b[i] = random.nextGaussian();
+				floatA[i] = (float)a[i];
+				floatB[i] = (float)b[i];
+			}
+			
+			for( int kernel = 0; kernel < 6; kernel++ ){
+				double scalarNanos = time(scalar, kernel, a, b, floatA, floatB, numRuns);
+				String line = NAMES[kernel] + "\t" + length + "\t" + String.format("%.1f", scalarNanos);
+				
+				if( simd != null ){
+					double simdNanos = time(simd, kernel, a, b, floatA, floatB, numRuns);
+					line += "\t" + String.format("%.1f", simdNanos) + "\t" + String.format("%.2f", scalarNanos/simdNanos) + "x";
+					
+					// the sums are added up in a different order, so only compare them roughly
+					double scalarResult = run(scalar, kernel, a, b, floatA, floatB);
+					double simdResult = run(simd, kernel, a, b, floatA, floatB);
+					
+					if( Math.abs(scalarResult - simdResult) > 1e-3*(1 + Math.abs(scalarResult)) ){
+						line += "\tWARNING: results differ (" + scalarResult + " vs " + simdResult + ")";
+					}
+				}
+				
+				System.out.println(line);
+			}
+		}
+		
+		System.out.println();
+		timeKNN(scalar, simd);
+	}
+	
+	/**
+	 * @param kernels
+	 * @param kernel which kernel to time (see NAMES)
+	 * @param a
+	 * @param b
+	 * @param floatA
+	 * @param floatB
+	 * @param numRuns
+	 * @return the best time for one call of the kernel, in nanoseconds
+	 */
+	private static double time(VectorKernels kernels, int kernel, double[] a, double[] b, float[] floatA, float[] floatB,
+			int numRuns){
+		int calls = Math.max(1, VALUES_PER_TIMING / a.length);
+		long best = Long.MAX_VALUE;
+		double sink = 0.0;
+		
+		// the first runs are warmup for the JIT, so report the best time
+		for( int r = 0; r < numRuns; r++ ){
+			long start = System.nanoTime();
+			
+			for( int call = 0; call < calls; call++ ){
+				sink += run(kernels, kernel, a, b, floatA, floatB);
+			}
+			
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		
+		// keep the JIT from dropping the calls
+		if( sink == 42.0 ){
+			System.out.println();
+		}
+		
+		return best/(double)calls;
+	}
+	
+	/**
+	 * Run a kernel once.  axpy adds a tiny multiple of a to b so b doesn't change much.
+	 * 
+	 * @return the result of the kernel (b[0] for axpy)
+	 */
+	private static double run(VectorKernels kernels, int kernel, double[] a, double[] b, float[] floatA, float[] floatB){
+		switch( kernel ){
+		case 0:
+			return kernels.squaredDistance(a, 0, b, 0, a.length);
+		case 1:
+			return kernels.squaredDistance(floatA, 0, floatB, 0, floatA.length);
+		case 2:
+			return kernels.dot(a, 0, b, 0, a.length);
+		case 3:
+			return kernels.dot(floatA, 0, floatB, 0, floatA.length);
+		case 4:
+			kernels.axpy(1e-12, a, 0, b, 0, a.length);
+			return b[0];
+		default:
+			kernels.axpy(1e-12f, floatA, 0, floatB, 0, floatA.length);
+			return floatB[0];
+		}
+	}
+	
+	/**
+	 * Time KNN classifying random examples by brute force with the scalar and
+	 * SIMD kernels, with and without early abandoning
+	 * 
+	 * @param scalar
+	 * @param simd null if not available
+	 */
+	private static void timeKNN(VectorKernels scalar, VectorKernels simd){
+		int numFeatures = 128;
+		Random random = new Random(158);
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			featureMap.put(f, "f" + f);
+		}
+		
+		DataSet data = new DataSet(featureMap);
+		
+		for( int i = 0; i < 22000; i++ ){
+			Example e = new Example();
+			
+			for( int f = 0; f < numFeatures; f++ ){
+				e.addFeature(f, random.nextGaussian());
+			}
+			
+			e.setLabel(random.nextBoolean() ? 1.0 : -1.0);
+			data.addData(e);
+		}
+		
+		DataSetSplit split = data.split(20000/22000.0);
+		List<Example> test = split.getTest().getData();
+		
+		for( boolean earlyAbandon: new boolean[]{false, true} ){
+			KNNClassifier knn = new KNNClassifier();
+			knn.setSearchMode(KNNClassifier.BRUTE_FORCE);
+			knn.setEarlyAbandon(earlyAbandon);
+			knn.train(split.getTrain());
+			
+			for( VectorKernels kernels: new VectorKernels[]{scalar, simd} ){
+				if( kernels == null ){
+					continue;
+				}
+				
+				VectorKernels.setUseSimd(kernels == simd);
+				long best = Long.MAX_VALUE;
+				
+				for( int r = 0; r < 3; r++ ){
+					long start = System.nanoTime();
+					
+					for( Example e: test ){
+						knn.classify(e);
+					}
+					
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				
+				System.out.println("KNN, " + split.getTrain().getData().size() + " x " + numFeatures +
+						(earlyAbandon ? ", early abandoning" : "") + ", " + kernels.getName() + ": " +
+						String.format("%.1f", best/1e3/test.size()) + " microseconds per example");
+			}
+		}
+	}
+}